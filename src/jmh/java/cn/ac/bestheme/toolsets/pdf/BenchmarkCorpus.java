@@ -0,0 +1,140 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * 基准测试用的合成PDF。每种文档都由固定的随机种子生成，不同机器、不同次运行得到的文件完全相同，
+ * 因此各次结果可以直接比较，仓库中也不需要保存大文件。
+ */
+enum BenchmarkCorpus {
+    // 扫描件：每页一张 300 DPI 的 A4 整页 JPEG
+    SCANNED {
+        @Override
+        void build(PDDocument document, Random random) throws IOException {
+            for (int i = 0; i < 4; i++) {
+                PDPage page = addPage(document);
+                PDImageXObject image = JPEGFactory.createFromImage(document, noise(random, 2480, 3508), 0.9f);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.drawImage(image, 0, 0, PDRectangle.A4.getWidth(), PDRectangle.A4.getHeight());
+                }
+            }
+        }
+    },
+    // 纯文本：没有图片，衡量解析和保存本身的开销
+    TEXT {
+        @Override
+        void build(PDDocument document, Random random) throws IOException {
+            for (int i = 0; i < 50; i++) {
+                PDPage page = addPage(document);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.setLeading(12);
+                    content.newLineAtOffset(50, 800);
+                    for (int line = 0; line < 60; line++) {
+                        content.showText(sentence(random));
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+        }
+    },
+    // 大量互不相同的小图标，衡量逐张图片的固定开销
+    SMALL_IMAGES {
+        @Override
+        void build(PDDocument document, Random random) throws IOException {
+            for (int i = 0; i < 10; i++) {
+                PDPage page = addPage(document);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    for (int j = 0; j < 40; j++) {
+                        int size = 48 + random.nextInt(160);
+                        PDImageXObject image = j % 2 == 0
+                                ? LosslessFactory.createFromImage(document, noise(random, size, size))
+                                : JPEGFactory.createFromImage(document, noise(random, size, size), 0.9f);
+                        content.drawImage(image, 40 + (j % 5) * 105, 40 + (j / 5) * 95, 90, 90);
+                    }
+                }
+            }
+        }
+    },
+    // 单张超大图片，衡量解码和缩放的峰值内存与耗时
+    HUGE_IMAGE {
+        @Override
+        void build(PDDocument document, Random random) throws IOException {
+            PDPage page = addPage(document);
+            PDImageXObject image = JPEGFactory.createFromImage(document, noise(random, 8000, 6000), 0.9f);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(image, 0, 0, PDRectangle.A4.getWidth(), PDRectangle.A4.getHeight());
+            }
+        }
+    };
+
+    private static final String[] WORDS = {
+            "compression", "document", "quality", "image", "page", "stream", "resource", "font",
+            "the", "of", "and", "to", "in", "is", "for", "with", "on", "that", "by", "this"
+    };
+
+    abstract void build(PDDocument document, Random random) throws IOException;
+
+    /**
+     * 生成文档并写入 directory，返回文件路径
+     */
+    Path write(Path directory) throws IOException {
+        Path file = directory.resolve(name().toLowerCase() + ".pdf");
+        try (PDDocument document = new PDDocument()) {
+            build(document, new Random(ordinal() * 7919L + 42));
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    private static PDPage addPage(PDDocument document) {
+        PDPage page = new PDPage(PDRectangle.A4);
+        document.addPage(page);
+        return page;
+    }
+
+    /**
+     * 平滑渐变叠加噪点，接近扫描件的统计特性：既不是纯色（JPEG无事可做），也不是白噪声（无法压缩）
+     */
+    private static BufferedImage noise(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        int base = random.nextInt(0xffffff);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = ((base >> 16) & 0xff) + x * 96 / width + random.nextInt(24);
+                int g = ((base >> 8) & 0xff) + y * 96 / height + random.nextInt(24);
+                int b = (base & 0xff) + (x + y) * 48 / (width + height) + random.nextInt(24);
+                row[x] = (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.min(255, Math.max(0, value));
+    }
+
+    private static String sentence(Random random) {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 90) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return builder.toString();
+    }
+}
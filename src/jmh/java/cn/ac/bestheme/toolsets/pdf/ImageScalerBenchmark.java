@@ -0,0 +1,136 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较各缩放算法的速度和输出质量。
+ * 质量以相对精确区域平均结果的 PSNR（dB）衡量，在每组参数开始时打印一次；速度由 JMH 统计。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageScalerBenchmark {
+    private static final int TARGET_WIDTH = 1000;
+    private static final int TARGET_HEIGHT = 750;
+
+    @Param({"SMOOTH", "BILINEAR", "BICUBIC"})
+    public String algorithm;
+
+    // 原图相对目标尺寸的整数倍数，便于计算精确的区域平均参考图
+    @Param({"3", "6"})
+    public int factor;
+
+    private BufferedImage source;
+    private ImageScaler scaler;
+
+    @Setup
+    public void setUp() {
+        source = createSource(TARGET_WIDTH * factor, TARGET_HEIGHT * factor);
+        scaler = ScalingAlgorithm.fromName(algorithm).scaler();
+
+        BufferedImage scaled = scaler.scale(source, TARGET_WIDTH, TARGET_HEIGHT);
+        BufferedImage reference = boxDownsample(source, factor);
+        System.out.printf("%n[quality] %s x%d: PSNR = %.2f dB%n", algorithm, factor, psnr(scaled, reference));
+    }
+
+    @Benchmark
+    public BufferedImage scale() {
+        return scaler.scale(source, TARGET_WIDTH, TARGET_HEIGHT);
+    }
+
+    /**
+     * 生成含渐变、同心圆纹理、文字和噪点的测试图，高频部分容易暴露混叠
+     */
+    static BufferedImage createSource(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        double cx = width / 2.0;
+        double cy = height / 2.0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double distance = Math.hypot(x - cx, y - cy);
+                int ring = (int) (127 + 127 * Math.sin(distance * distance / (width * 4.0)));
+                int r = (x * 255) / width;
+                int g = ring;
+                int b = Math.min(255, Math.max(0, (y * 255) / height + random.nextInt(31) - 15));
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(Color.BLACK);
+            g.setFont(new Font(Font.SERIF, Font.PLAIN, 12 * width / TARGET_WIDTH));
+            for (int line = 1; line < 40; line++) {
+                g.drawString("The quick brown fox jumps over the lazy dog 0123456789", width / 20, line * height / 40);
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    static BufferedImage boxDownsample(BufferedImage source, int factor) {
+        int width = source.getWidth() / factor;
+        int height = source.getHeight() / factor;
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int area = factor * factor;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (int dy = 0; dy < factor; dy++) {
+                    for (int dx = 0; dx < factor; dx++) {
+                        int rgb = source.getRGB(x * factor + dx, y * factor + dy);
+                        r += (rgb >> 16) & 0xff;
+                        g += (rgb >> 8) & 0xff;
+                        b += rgb & 0xff;
+                    }
+                }
+                result.setRGB(x, y, ((r / area) << 16) | ((g / area) << 8) | (b / area));
+            }
+        }
+        return result;
+    }
+
+    static double psnr(BufferedImage actual, BufferedImage expected) {
+        double sum = 0;
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int a = actual.getRGB(x, y);
+                int e = expected.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int diff = ((a >> shift) & 0xff) - ((e >> shift) & 0xff);
+                    sum += diff * diff;
+                }
+            }
+        }
+        double mse = sum / (width * height * 3.0);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+}
@@ -0,0 +1,125 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.configuration.MemorySizeConverter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 衡量 {@link PdfService#compress(InputStream, CompressionOptions)} 加 {@link CompressedPdf#writeTo} 在各类合成文档上的吞吐量，
+ * 与接口的实际路径相同：结果直接写入只计数的输出流，不在堆中保留整份结果。
+ * 每次操作的内存分配由 gc 分析器统计（benchmark profile 默认启用 -prof gc），
+ * 输入、输出字节数作为附加指标写入 JSON 结果，二者之比即压缩率。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class PdfServiceBenchmark {
+
+    @Param({"SCANNED", "TEXT", "SMALL_IMAGES", "HUGE_IMAGE"})
+    public String corpus;
+
+    private Path directory;
+    private Path input;
+    private long inputSize;
+    private PdfService pdfService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("pdf-benchmark");
+        input = BenchmarkCorpus.valueOf(corpus).write(directory);
+        inputSize = Files.size(input);
+
+        pdfService = new PdfService();
+        pdfService.imageThreads = 0;
+        pdfService.perRequestMemory = new MemorySizeConverter().convert("64M");
+        pdfService.totalMemory = new MemorySizeConverter().convert("512M");
+        pdfService.scratchDir = Optional.of(directory.toString());
+        pdfService.decodeBudgetSize = new MemorySizeConverter().convert("1G");
+        pdfService.admissionTimeout = Duration.ofSeconds(10);
+        pdfService.stripPixels = 4L << 20;
+        pdfService.optimizeStructure = true;
+        pdfService.metrics = new CompressionMetrics(new SimpleMeterRegistry());
+        pdfService.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pdfService.shutdown();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long compress(Output output) throws IOException {
+        CountingNullOutputStream outputStream = new CountingNullOutputStream();
+        try (InputStream inputStream = Files.newInputStream(input);
+             CompressedPdf compressed = pdfService.compress(inputStream, CompressionOptions.defaults())) {
+            compressed.writeTo(outputStream);
+        }
+        output.inputBytes += inputSize;
+        output.outputBytes += outputStream.count;
+        return outputStream.count;
+    }
+
+    /**
+     * 每次迭代累计的输入、输出字节数，在结果中以次要指标出现
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Output {
+        public long inputBytes;
+        public long outputBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            inputBytes = 0;
+            outputBytes = 0;
+        }
+    }
+
+    /**
+     * 丢弃写入的数据，只统计字节数
+     */
+    private static final class CountingNullOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -1,25 +1,150 @@
 package cn.ac.bestheme.toolsets.mqa.controller;
 
 import cn.ac.bestheme.toolsets.mqa.model.University;
+import cn.ac.bestheme.toolsets.mqa.service.MqaRefresher;
+import cn.ac.bestheme.toolsets.mqa.service.MqaSnapshot;
+import cn.ac.bestheme.toolsets.mqa.service.ProgramQuery;
+import cn.ac.bestheme.toolsets.mqa.service.ProgramSearchResult;
 import cn.ac.bestheme.toolsets.mqa.service.UniversityService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
+import java.util.Date;
 import java.util.List;
 
 @Path("/api/universities")
 public class UniversityController {
+    private static final String NDJSON = "application/x-ndjson";
+    // 尚无快照时建议客户端重试的等待秒数
+    private static final int RETRY_AFTER_SECONDS = 60;
+    // 课程查询每页最多返回的结果数
+    private static final int MAX_LIMIT = 500;
 
     @Inject
     UniversityService universityService;
 
+    @Inject
+    ObjectMapper objectMapper;
+
+    /**
+     * 返回当前快照中的全部大学，不等待采集。Last-Modified 为快照的采集完成时间，X-Snapshot-Age 为快照距今的秒数；
+     * 尚未完成过采集时在后台开始采集并返回 503
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public List<University> getAllUniversities() {
-        return universityService.getAllUniversities();
+    public Response getAllUniversities(@Context Request request) {
+        MqaSnapshot snapshot = universityService.getSnapshot();
+        if (snapshot == null) {
+            return notCrawledYet();
+        }
+
+        Date lastModified = Date.from(snapshot.crawledAt());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok(snapshot.universities())
+                .lastModified(lastModified)
+                .header("X-Snapshot-Age", MqaRefresher.age(snapshot).toSeconds())
+                .build();
+    }
+
+    /**
+     * 在当前快照中查询课程并分页返回，结果按大学和课程在网站上的顺序排列。
+     * 同一参数可以重复给出，多个值之间为“或”；不同参数之间为“且”。name、university 为名称中的词，多个词时必须全部出现
+     */
+    @GET
+    @Path("/programs")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response searchPrograms(@QueryParam("state") List<String> states,
+                                   @QueryParam("type") List<String> types,
+                                   @QueryParam("level") List<String> levels,
+                                   @QueryParam("field") List<String> fields,
+                                   @QueryParam("mode") List<String> modes,
+                                   @QueryParam("name") String name,
+                                   @QueryParam("university") String university,
+                                   @QueryParam("include_removed") @DefaultValue("false") boolean includeRemoved,
+                                   @QueryParam("offset") @DefaultValue("0") int offset,
+                                   @QueryParam("limit") @DefaultValue("50") int limit,
+                                   @Context Request request) {
+        if (offset < 0 || limit < 1 || limit > MAX_LIMIT) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("offset 不能小于0，limit 必须在1到" + MAX_LIMIT + "之间")
+                    .build();
+        }
+
+        ProgramSearchResult result = universityService.searchPrograms(new ProgramQuery(
+                states, types, levels, fields, modes, name, university, includeRemoved, offset, limit));
+        if (result == null) {
+            return notCrawledYet();
+        }
+
+        Date lastModified = Date.from(result.crawledAt());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok(result)
+                .lastModified(lastModified)
+                .build();
+    }
+
+    /**
+     * 后台采集状态和当前快照的采集时间
+     */
+    @GET
+    @Path("/status")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getStatus() {
+        return Response.ok(universityService.getStatus()).build();
+    }
+
+    /**
+     * 在后台开始采集并立即返回 202；已有采集进行中时不重复开始
+     */
+    @POST
+    @Path("/refresh")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response refresh() {
+        universityService.refresh();
+        return Response.accepted(universityService.getStatus()).build();
+    }
+
+    /**
+     * 以 NDJSON（每行一个 JSON 对象）流式返回全部大学，服务器不需要把整个响应放在内存中。
+     * 后台采集进行中时从本次采集的第一所大学开始输出，之后每所大学及其课程采集完成后立即写出一行；
+     * 没有采集进行中时输出当前快照；尚无快照时在后台开始采集并按上述方式输出。
+     * 采集不在请求线程中进行，客户端读取缓慢或中途断开都不影响采集
+     */
+    @GET
+    @Path("/stream")
+    @Produces(NDJSON)
+    public Response streamAllUniversities() {
+        StreamingOutput output = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                // 每个对象后写换行，不使用 Jackson 默认的空格分隔
+                generator.setRootValueSeparator(null);
+                universityService.streamAllUniversities(university -> {
+                    objectMapper.writeValue(generator, university);
+                    generator.writeRaw('\n');
+                    generator.flush();
+                });
+            }
+        };
+        return Response.ok(output).build();
     }
 
     @GET
@@ -28,4 +153,16 @@ public class UniversityController {
     public University getTestUniversity() {
         return universityService.getTestUniversity();
     }
-} 
\ No newline at end of file
+
+    /**
+     * 尚未完成过采集：在后台开始采集并返回 503
+     */
+    private Response notCrawledYet() {
+        universityService.refresh();
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RETRY_AFTER_SECONDS)
+                .type(MediaType.TEXT_PLAIN)
+                .entity("大学数据正在首次采集，请稍后重试")
+                .build();
+    }
+}
@@ -1,7 +1,10 @@
 package cn.ac.bestheme.toolsets.mqa.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.Instant;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -28,6 +31,14 @@ public class Program {
     @JsonProperty("details")
     private ProgramDetails details;
 
+    // 最近一次成功获取课程详情的时间，尚未获取时为 null
+    @JsonProperty("details_fetched_at")
+    private Instant detailsFetchedAt;
+
+    // 课程从大学的课程表格中消失的时间，仍在表格中时为 null
+    @JsonProperty("removed_at")
+    private Instant removedAt;
+
     public static class ProgramDetails {
         @JsonProperty("certificate_number")
         private String certificateNumber;
@@ -78,7 +89,11 @@ public class Program {
             @JsonProperty("duration")
             private String duration;
 
-            public DurationRow(String type, String weeksPerSemester, String semesters, String duration) {
+            @JsonCreator
+            public DurationRow(@JsonProperty("type") String type,
+                               @JsonProperty("weeks_per_semester") String weeksPerSemester,
+                               @JsonProperty("semesters") String semesters,
+                               @JsonProperty("duration") String duration) {
                 this.type = type;
                 this.weeksPerSemester = weeksPerSemester;
                 this.semesters = semesters;
@@ -115,8 +130,13 @@ public class Program {
             @JsonProperty("credits")
             private String credits;
 
-            public StudyScheduleRow(String starting, String weeksPerSemester, String semesters, 
-                                  String industrialTraining, String years, String credits) {
+            @JsonCreator
+            public StudyScheduleRow(@JsonProperty("starting") String starting,
+                                  @JsonProperty("weeks_per_semester") String weeksPerSemester,
+                                  @JsonProperty("semesters") String semesters,
+                                  @JsonProperty("industrial_training") String industrialTraining,
+                                  @JsonProperty("years") String years,
+                                  @JsonProperty("credits") String credits) {
                 this.starting = starting;
                 this.weeksPerSemester = weeksPerSemester;
                 this.semesters = semesters;
@@ -172,7 +192,13 @@ public class Program {
         public void setStudySchedule(List<StudyScheduleRow> studySchedule) { this.studySchedule = studySchedule; }
     }
 
-    public Program(String id, String referenceNumber, String name, String type, String level, String field) {
+    @JsonCreator
+    public Program(@JsonProperty("id") String id,
+                   @JsonProperty("reference_number") String referenceNumber,
+                   @JsonProperty("name") String name,
+                   @JsonProperty("type") String type,
+                   @JsonProperty("level") String level,
+                   @JsonProperty("field") String field) {
         this.id = id;
         this.referenceNumber = referenceNumber;
         this.name = name;
@@ -238,4 +264,25 @@ public class Program {
     public void setDetails(ProgramDetails details) {
         this.details = details;
     }
-} 
\ No newline at end of file
+
+    public Instant getDetailsFetchedAt() {
+        return detailsFetchedAt;
+    }
+
+    public void setDetailsFetchedAt(Instant detailsFetchedAt) {
+        this.detailsFetchedAt = detailsFetchedAt;
+    }
+
+    public Instant getRemovedAt() {
+        return removedAt;
+    }
+
+    public void setRemovedAt(Instant removedAt) {
+        this.removedAt = removedAt;
+    }
+
+    @JsonIgnore
+    public boolean isRemoved() {
+        return removedAt != null;
+    }
+}
@@ -1,5 +1,6 @@
 package cn.ac.bestheme.toolsets.mqa.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.ArrayList;
@@ -37,7 +38,11 @@ public class University {
     @JsonProperty("programs")
     private List<Program> programs;
 
-    public University(String id, String name, String state, String previousName) {
+    @JsonCreator
+    public University(@JsonProperty("id") String id,
+                      @JsonProperty("name") String name,
+                      @JsonProperty("state") String state,
+                      @JsonProperty("previous_name") String previousName) {
         this.id = id;
         this.name = name;
         this.state = state;
@@ -0,0 +1,53 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import cn.ac.bestheme.toolsets.mqa.model.University;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次后台采集中已完成的大学，按完成顺序追加。流式接口的每个请求各自从头读取并等待后续的大学，
+ * 采集只追加、从不等待读取方，客户端再慢或断开也不影响采集。
+ * 采集结束后整份结果本来就要保存为快照，这里只多持有一份引用，大小以一次采集的结果为上限
+ */
+final class CrawlFeed {
+    private final List<University> universities = new ArrayList<>();
+    private boolean finished;
+
+    synchronized void add(University university) {
+        universities.add(university);
+        notifyAll();
+    }
+
+    synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * 在当前线程中按顺序把已完成和之后完成的大学交给 sink，采集结束后返回。sink 抛出异常时停止读取
+     */
+    void forEach(MqaCrawler.UniversitySink sink) throws IOException {
+        int next = 0;
+        while (true) {
+            University university;
+            synchronized (this) {
+                try {
+                    while (next == universities.size() && !finished) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待采集结果时被中断");
+                }
+                if (next == universities.size()) {
+                    return;
+                }
+                university = universities.get(next++);
+            }
+            sink.accept(university);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对同一主机的请求限流：同时进行的请求数不超过 maxConcurrency，相邻两次请求的开始时间至少间隔 1/requestsPerSecond 秒。
+ * 先取得并发许可再排队等待发送时间，等待许可的请求不会占用发送时间
+ */
+final class HostThrottle {
+    private final Semaphore permits;
+    private final long intervalNanos;
+    private long nextSlot = System.nanoTime();
+
+    HostThrottle(int maxConcurrency, double requestsPerSecond) {
+        this.permits = new Semaphore(Math.max(1, maxConcurrency), true);
+        this.intervalNanos = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+    }
+
+    /**
+     * 等待到可以发送下一个请求，请求结束后必须调用 {@link #release()}
+     */
+    void acquire() throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待请求许可时被中断");
+        }
+        try {
+            long delay = reserveSlot() - System.nanoTime();
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            permits.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待请求许可时被中断");
+        }
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    private synchronized long reserveSlot() {
+        long slot = Math.max(nextSlot, System.nanoTime());
+        nextSlot = slot + intervalNanos;
+        return slot;
+    }
+}
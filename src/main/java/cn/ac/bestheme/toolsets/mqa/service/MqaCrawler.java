@@ -0,0 +1,391 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import cn.ac.bestheme.toolsets.mqa.model.Program;
+import cn.ac.bestheme.toolsets.mqa.model.University;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 采集 MQA 网站上的全部大学和课程。
+ * 列表页依次获取（下一页地址在上一页中），每解析出一所大学就在虚拟线程中获取其详情页，
+ * 详情页中的每门课程再各自在虚拟线程中获取课程详情；实际同时发出的请求数和频率由 {@link MqaFetcher} 按主机限制。
+ * 每个大学、课程对象只由一个任务填写，课程在所属大学的任务中等待全部完成后按表格顺序加入，
+ * 大学按列表顺序排列，因此结果与依次采集完全相同，不受请求完成先后的影响。
+ * <p>
+ * 采集是增量的：大学详情页的课程表格中已有课程的名称、类型、等级和 NEC 领域，与上次的结果（{@link MqaSnapshotStore}）相比，
+ * 只有新增的、表格中信息有变化的、或详情获取时间超过 mqa.crawl.program-staleness 的课程才重新获取详情，
+ * 其余课程沿用上次的详情。上次有、这次表格中没有的课程保留在最后并标记删除时间，
+ * 标记删除超过 mqa.crawl.removed-retention 的课程不再保留。上次有、这次列表中没有的大学同样保留在最后，
+ * 其课程全部标记删除，课程都超过保留期限后不再保留该大学。
+ */
+@ApplicationScoped
+public class MqaCrawler {
+    private static final Logger LOG = Logger.getLogger(MqaCrawler.class);
+
+    // 课程详情超过该时间后即使表格中的信息没有变化也重新获取
+    @ConfigProperty(name = "mqa.crawl.program-staleness", defaultValue = "30d")
+    Duration programStaleness;
+
+    // 标记删除超过该时间的课程从结果中去掉，0 表示一直保留
+    @ConfigProperty(name = "mqa.crawl.removed-retention", defaultValue = "365d")
+    Duration removedRetention;
+
+    @Inject
+    MqaFetcher fetcher;
+
+    @Inject
+    MqaSnapshotStore snapshots;
+
+    /**
+     * 接收采集完成的大学，在调用 {@link #crawl(UniversitySink)} 的线程中按列表顺序调用
+     */
+    @FunctionalInterface
+    public interface UniversitySink {
+        void accept(University university) throws IOException;
+    }
+
+    /**
+     * 采集全部大学及其课程，每所大学（含课程）完成后立即交给 sink，顺序与网站列表一致：
+     * 前面的大学尚未完成时，后面已完成的大学等待其完成后再交出。完整采集后保存为新的快照。
+     * 某个页面获取失败时记录日志并跳过：列表页失败时只交出已获取的部分，且不更新快照；
+     * 详情页失败时沿用上次的结果，没有上次的结果时只保留列表中的信息。
+     * sink 抛出异常（例如客户端断开）时中断剩余的请求，异常原样抛出
+     *
+     * @return 大学列表是否完整获取，即是否保存了新的快照
+     */
+    public boolean crawl(UniversitySink sink) throws IOException {
+        MqaSnapshot previous = snapshots.current();
+        Map<String, University> previousUniversities = new HashMap<>();
+        if (previous != null) {
+            for (University university : previous.universities()) {
+                previousUniversities.putIfAbsent(university.getId(), university);
+            }
+        }
+
+        Instant started = Instant.now();
+        CrawlCounts counts = new CrawlCounts();
+        List<University> universities = new ArrayList<>();
+        Deque<PendingUniversity> pending = new ArrayDeque<>();
+        boolean complete = true;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                String url = MqaPageParser.BASE_URL;
+                while (url != null) {
+                    MqaPageParser.ListingPage page;
+                    try {
+                        LOG.debug("获取大学列表: " + url);
+                        page = MqaPageParser.parseListing(fetcher.get(url));
+                    } catch (IOException e) {
+                        LOG.error("获取大学列表失败: " + url, e);
+                        complete = false;
+                        break;
+                    }
+                    for (University university : page.universities()) {
+                        universities.add(university);
+                        Future<?> details = null;
+                        if (!university.getId().isEmpty()) {
+                            University known = previousUniversities.get(university.getId());
+                            details = executor.submit(() -> fetchUniversity(university, known, started, counts, executor));
+                        }
+                        pending.add(new PendingUniversity(university, details));
+                    }
+                    emit(pending, sink, false);
+                    url = page.nextPageUrl();
+                }
+                emit(pending, sink, true);
+            } catch (IOException | RuntimeException e) {
+                // 不再等待剩余的页面，关闭线程池前先中断正在进行的请求
+                executor.shutdownNow();
+                throw e;
+            }
+        }
+        // 列表不完整时无法判断哪些大学已不在列表中
+        if (complete && previous != null) {
+            for (University dropped : droppedUniversities(previous, universities, started, counts)) {
+                universities.add(dropped);
+                sink.accept(dropped);
+            }
+        }
+
+        LOG.info("采集完成，大学 " + universities.size() + " 所，获取课程详情 " + counts.fetched + " 门，沿用上次结果 "
+                + counts.reused + " 门，新标记删除 " + counts.removed + " 门，去掉超过保留期限的已删除课程 "
+                + counts.purged + " 门，列表中已没有的大学 " + counts.droppedUniversities + " 所");
+        if (complete) {
+            snapshots.save(new MqaSnapshot(Instant.now(), universities));
+        } else {
+            LOG.warn("大学列表未完整获取，保留上次的采集结果");
+        }
+        return complete;
+    }
+
+    /**
+     * 采集第一所有详情页的大学及其第一门课程，用于检查页面解析是否正常
+     */
+    public University crawlSample() {
+        try {
+            MqaPageParser.ListingPage page = MqaPageParser.parseListing(fetcher.get(MqaPageParser.BASE_URL));
+            for (University university : page.universities()) {
+                if (university.getId().isEmpty()) {
+                    continue;
+                }
+                List<Program> programs = MqaPageParser.parseUniversityDetails(
+                        fetcher.get(MqaPageParser.universityDetailUrl(university)), university);
+                if (!programs.isEmpty()) {
+                    Program program = programs.get(0);
+                    fetchProgram(program, Instant.now());
+                    university.getPrograms().add(program);
+                }
+                return university;
+            }
+        } catch (IOException e) {
+            LOG.error("获取测试大学失败", e);
+        }
+        return null;
+    }
+
+    /**
+     * 获取大学详情页，按课程表格与上次的结果比较，只为需要更新的课程获取详情
+     *
+     * @param known 上次采集到的同一所大学，没有时为 null
+     */
+    private void fetchUniversity(University university, University known, Instant now, CrawlCounts counts,
+                                 ExecutorService executor) {
+        List<Program> programs;
+        try {
+            programs = MqaPageParser.parseUniversityDetails(
+                    fetcher.get(MqaPageParser.universityDetailUrl(university)), university);
+        } catch (IOException e) {
+            LOG.error("获取大学详情失败: " + university.getName() + " (ID: " + university.getId() + ")", e);
+            if (known != null) {
+                copyContact(known, university);
+                for (Program program : known.getPrograms()) {
+                    if (isExpired(program, now)) {
+                        counts.purged.incrementAndGet();
+                    } else {
+                        university.getPrograms().add(program);
+                    }
+                }
+            }
+            return;
+        }
+
+        // 按表格顺序排列，剩下的就是这次表格中没有的课程
+        Map<String, Program> knownPrograms = new LinkedHashMap<>();
+        if (known != null) {
+            for (Program program : known.getPrograms()) {
+                knownPrograms.putIfAbsent(key(program), program);
+            }
+        }
+        List<Future<?>> details = new ArrayList<>(programs.size());
+        for (Program program : programs) {
+            Program previous = knownPrograms.remove(key(program));
+            if (previous != null && isUpToDate(previous, program, now)) {
+                program.setDetails(previous.getDetails());
+                program.setDetailsFetchedAt(previous.getDetailsFetchedAt());
+                counts.reused.incrementAndGet();
+            } else {
+                counts.fetched.incrementAndGet();
+                details.add(executor.submit(() -> {
+                    if (!fetchProgram(program, now) && previous != null) {
+                        // 获取失败时沿用上次的详情，下次采集再重试
+                        program.setDetails(previous.getDetails());
+                        program.setDetailsFetchedAt(previous.getDetailsFetchedAt());
+                    }
+                }));
+            }
+        }
+        join(details);
+        university.getPrograms().addAll(programs);
+        for (Program removed : knownPrograms.values()) {
+            if (isExpired(removed, now)) {
+                counts.purged.incrementAndGet();
+            } else {
+                university.getPrograms().add(markRemoved(removed, now, counts));
+            }
+        }
+        LOG.debug("大学 " + university.getName() + " 采集完成，课程 " + programs.size() + " 门");
+    }
+
+    /**
+     * 上次有、这次列表中没有的大学，按上次的顺序复制一份：课程全部标记删除，超过保留期限的课程去掉，
+     * 没有剩下课程的大学不再保留
+     */
+    private List<University> droppedUniversities(MqaSnapshot previous, List<University> listed, Instant now,
+                                                 CrawlCounts counts) {
+        Set<String> seen = new HashSet<>();
+        for (University university : listed) {
+            seen.add(university.getId());
+        }
+        List<University> dropped = new ArrayList<>();
+        for (University known : previous.universities()) {
+            if (known.getId() == null || known.getId().isEmpty() || !seen.add(known.getId())) {
+                continue;
+            }
+            University university = new University(known.getId(), known.getName(), known.getState(),
+                    known.getPreviousName());
+            copyContact(known, university);
+            for (Program program : known.getPrograms()) {
+                if (isExpired(program, now)) {
+                    counts.purged.incrementAndGet();
+                } else {
+                    university.getPrograms().add(markRemoved(program, now, counts));
+                }
+            }
+            if (!university.getPrograms().isEmpty()) {
+                dropped.add(university);
+                counts.droppedUniversities.incrementAndGet();
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * 获取课程详情，成功时记录获取时间
+     */
+    private boolean fetchProgram(Program program, Instant now) {
+        try {
+            MqaPageParser.parseProgramDetails(fetcher.get(MqaPageParser.programDetailUrl(program)), program);
+            program.setDetailsFetchedAt(now);
+            return true;
+        } catch (IOException e) {
+            LOG.error("获取课程详情失败: " + program.getName() + " (ID: " + program.getId() + ")", e);
+            return false;
+        }
+    }
+
+    /**
+     * 上次的课程仍在表格中、表格中的信息没有变化，且详情没有过期
+     */
+    private boolean isUpToDate(Program previous, Program current, Instant now) {
+        return !previous.isRemoved()
+                && previous.getDetailsFetchedAt() != null
+                && previous.getDetailsFetchedAt().plus(programStaleness).isAfter(now)
+                && Objects.equals(previous.getReferenceNumber(), current.getReferenceNumber())
+                && Objects.equals(previous.getName(), current.getName())
+                && Objects.equals(previous.getType(), current.getType())
+                && Objects.equals(previous.getLevel(), current.getLevel())
+                && Objects.equals(previous.getField(), current.getField());
+    }
+
+    /**
+     * 课程已标记删除且超过保留期限
+     */
+    private boolean isExpired(Program program, Instant now) {
+        return program.isRemoved()
+                && !removedRetention.isZero()
+                && program.getRemovedAt().plus(removedRetention).isBefore(now);
+    }
+
+    /**
+     * 课程的标识：有课程ID时使用ID，否则使用参考号和名称
+     */
+    private static String key(Program program) {
+        return program.getId() != null && !program.getId().isEmpty()
+                ? program.getId()
+                : program.getReferenceNumber() + "|" + program.getName();
+    }
+
+    /**
+     * 上次的快照不能修改，新标记删除的课程复制一份；已经标记过的课程原样保留
+     */
+    private static Program markRemoved(Program program, Instant now, CrawlCounts counts) {
+        if (program.isRemoved()) {
+            return program;
+        }
+        Program removed = new Program(program.getId(), program.getReferenceNumber(), program.getName(),
+                program.getType(), program.getLevel(), program.getField());
+        removed.setDetails(program.getDetails());
+        removed.setDetailsFetchedAt(program.getDetailsFetchedAt());
+        removed.setRemovedAt(now);
+        counts.removed.incrementAndGet();
+        return removed;
+    }
+
+    private static void copyContact(University from, University to) {
+        to.setAddress(from.getAddress());
+        to.setTelephone(from.getTelephone());
+        to.setFax(from.getFax());
+        to.setEmail(from.getEmail());
+        to.setWebsite(from.getWebsite());
+    }
+
+    /**
+     * 按列表顺序交出已经完成的大学。wait 为 false 时遇到未完成的大学即返回，为 true 时等待全部完成
+     */
+    private static void emit(Deque<PendingUniversity> pending, UniversitySink sink, boolean wait) throws IOException {
+        while (!pending.isEmpty()) {
+            PendingUniversity head = pending.peek();
+            if (head.details() != null) {
+                if (!wait && !head.details().isDone()) {
+                    return;
+                }
+                join(List.of(head.details()));
+            }
+            pending.poll();
+            sink.accept(head.university());
+        }
+    }
+
+    /**
+     * 已从列表中解析、尚未交出的大学，details 为获取详情的任务，没有详情页时为 null
+     */
+    private record PendingUniversity(University university, Future<?> details) {
+    }
+
+    /**
+     * 本次采集中获取详情、沿用上次结果、新标记删除和超过保留期限被去掉的课程数，以及保留下来的列表中已没有的大学数
+     */
+    private static final class CrawlCounts {
+        final AtomicInteger fetched = new AtomicInteger();
+        final AtomicInteger reused = new AtomicInteger();
+        final AtomicInteger removed = new AtomicInteger();
+        final AtomicInteger purged = new AtomicInteger();
+        final AtomicInteger droppedUniversities = new AtomicInteger();
+    }
+
+    /**
+     * 等待所有任务完成。被中断时取消剩余任务并抛出 {@link CancellationException}
+     */
+    private static void join(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(pending -> pending.cancel(true));
+                throw new CancellationException("采集被中断");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 下载并解析网页。所有采集请求都经过这里，按主机限制并发数和请求频率，避免被目标网站封禁。
+ * 页面保存在 {@link PageCache} 中：有效期内的页面直接使用缓存；过期的页面带上 If-None-Match / If-Modified-Since
+ * 发条件请求，服务器返回 304 时沿用缓存的内容。可以在任意线程（包括虚拟线程）中并发调用
+ */
+@ApplicationScoped
+public class MqaFetcher {
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    // 对同一主机同时进行的最大请求数
+    @ConfigProperty(name = "mqa.crawl.max-concurrency-per-host", defaultValue = "4")
+    int maxConcurrencyPerHost;
+
+    // 对同一主机每秒最多发起的请求数，0 表示不限制
+    @ConfigProperty(name = "mqa.crawl.requests-per-second", defaultValue = "4")
+    double requestsPerSecond;
+
+    // 单个请求的连接和读取超时
+    @ConfigProperty(name = "mqa.crawl.timeout", defaultValue = "30s")
+    Duration timeout;
+
+    @Inject
+    PageCache cache;
+
+    @Inject
+    MeterRegistry registry;
+
+    private final Map<String, HostThrottle> throttles = new ConcurrentHashMap<>();
+    private Counter fresh;
+    private Counter revalidated;
+    private Counter downloaded;
+
+    @PostConstruct
+    void init() {
+        fresh = Counter.builder("mqa.fetch.requests").tag("result", "fresh").register(registry);
+        revalidated = Counter.builder("mqa.fetch.requests").tag("result", "not-modified").register(registry);
+        downloaded = Counter.builder("mqa.fetch.requests").tag("result", "downloaded").register(registry);
+    }
+
+    public Document get(String url) throws IOException {
+        PageCache.Entry cached = cache.get(url);
+        if (cached != null && cache.isFresh(cached, Instant.now())) {
+            fresh.increment();
+            return cached.parse();
+        }
+
+        HostThrottle throttle = throttles.computeIfAbsent(host(url),
+                host -> new HostThrottle(maxConcurrencyPerHost, requestsPerSecond));
+        PageCache.Entry entry;
+        throttle.acquire();
+        try {
+            Connection connection = Jsoup.connect(url).timeout((int) timeout.toMillis());
+            if (cached != null && cached.etag() != null) {
+                connection.header("If-None-Match", cached.etag());
+            }
+            if (cached != null && cached.lastModified() != null) {
+                connection.header("If-Modified-Since", cached.lastModified());
+            }
+            Connection.Response response = connection.execute();
+            if (response.statusCode() == HTTP_NOT_MODIFIED && cached != null && cached.hasValidator()) {
+                entry = cached.revalidatedAt(Instant.now());
+                revalidated.increment();
+            } else {
+                entry = new PageCache.Entry(url, response.header("ETag"), response.header("Last-Modified"),
+                        Instant.now(), response.charset(), response.bodyAsBytes());
+                downloaded.increment();
+            }
+        } finally {
+            throttle.release();
+        }
+        cache.put(entry);
+        return entry.parse();
+    }
+
+    /**
+     * 取出地址中的主机名。课程参考号中可能有空格，不能用 URI 解析
+     */
+    private static String host(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+}
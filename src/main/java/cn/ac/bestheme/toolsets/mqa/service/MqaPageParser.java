@@ -0,0 +1,329 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import cn.ac.bestheme.toolsets.mqa.model.Program;
+import cn.ac.bestheme.toolsets.mqa.model.Program.ProgramDetails.DurationRow;
+import cn.ac.bestheme.toolsets.mqa.model.Program.ProgramDetails.StudyScheduleRow;
+import cn.ac.bestheme.toolsets.mqa.model.University;
+import org.jboss.logging.Logger;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解析 MQA 网站的大学列表页、大学详情页和课程详情页。只处理已经下载的页面，不访问网络，可以在任意线程中调用
+ */
+final class MqaPageParser {
+    private static final Logger LOG = Logger.getLogger(MqaPageParser.class);
+
+    static final String BASE_URL = "https://www2.mqa.gov.my/mqr/english/eakrbyipts.cfm";
+    private static final String NEXT_PAGE_PATTERN = "eakrbyipts.cfm?StartRow=";
+    private static final String DETAIL_URL = "https://www2.mqa.gov.my/mqr/english/eakrKPList.cfm";
+    private static final String PROGRAM_DETAIL_URL = "https://www2.mqa.gov.my/mqr/english/epapar.cfm";
+
+    /**
+     * 列表页中的大学（按页面顺序，只有列表中的信息）和下一页地址，没有下一页时为 null
+     */
+    record ListingPage(List<University> universities, String nextPageUrl) {
+    }
+
+    private MqaPageParser() {
+    }
+
+    static String universityDetailUrl(University university) {
+        return DETAIL_URL + "?IDAkrIPTS=" + university.getId();
+    }
+
+    static String programDetailUrl(Program program) {
+        return PROGRAM_DETAIL_URL + "?NoRujA=" + program.getReferenceNumber() + "&IdAkrKP=" + program.getId();
+    }
+
+    static ListingPage parseListing(Document doc) {
+        List<University> universities = new ArrayList<>();
+        // 精确匹配目标表格
+        Element table = doc.select("table[border=2][width=661][bordercolor=#80000]").first();
+        if (table != null) {
+            Elements rows = table.select("tr");
+            for (Element row : rows) {
+                Elements cells = row.select("td");
+                if (cells.size() >= 3) {
+                    String name = cells.get(1).text().trim();
+                    String state = cells.get(2).text().trim();
+
+                    // 跳过表头和无效数据
+                    if (name.equals("NO") || name.equals("IPTS NAME") || name.isEmpty() ||
+                        name.contains("Programme that is marked in green colour") ||
+                        name.contains("ACCREDITATION STATUS")) {
+                        continue;
+                    }
+
+                    // 从链接中提取ID
+                    String id = "";
+                    Element link = cells.get(1).select("a").first();
+                    if (link != null) {
+                        String href = link.attr("href");
+                        if (href.contains("IDAkrIPTS=")) {
+                            id = href.substring(href.indexOf("IDAkrIPTS=") + 10);
+                            if (id.contains("&")) {
+                                id = id.substring(0, id.indexOf("&"));
+                            }
+                        }
+                    }
+
+                    String previousName = "";
+                    // 提取括号中的前身名称
+                    if (name.contains("(Previously known as :")) {
+                        int start = name.indexOf("(Previously known as :");
+                        int end = name.lastIndexOf(")");
+                        previousName = name.substring(start + 21, end).trim();
+                        name = name.substring(0, start).trim();
+                    }
+
+                    universities.add(new University(id, name, state, previousName));
+                }
+            }
+        }
+
+        // 查找下一页链接
+        return new ListingPage(universities, findNextPageUrl(doc));
+    }
+
+    /**
+     * 把详情页中的联系方式写入 university，返回专业表格中的课程（按表格顺序，尚未获取课程详情）
+     */
+    static List<Program> parseUniversityDetails(Document doc, University university) {
+        // 使用更精确的表格选择器获取基本信息
+        Element infoTable = doc.select("table[border=1][width=100%][bordercolor=80000][cellspacing=0][cellpadding=0]").first();
+        if (infoTable != null) {
+            Elements rows = infoTable.select("tr");
+            for (Element row : rows) {
+                Elements cells = row.select("td");
+                if (cells.size() >= 3) {  // 确保有至少3个单元格
+                    String label = cells.get(0).text().trim();
+                    String value = cells.get(2).text().trim();  // 跳过中间的冒号单元格
+
+                    if (label.equals("Address")) {
+                        university.setAddress(value);
+                    } else if (label.equals("Telephone No.")) {
+                        university.setTelephone(value);
+                    } else if (label.equals("Fax No.")) {
+                        university.setFax(value);
+                    } else if (label.equals("E-Mail")) {
+                        university.setEmail(value);
+                    } else if (label.equals("Website")) {
+                        university.setWebsite(value);
+                    }
+                }
+            }
+        } else {
+            LOG.debug("未找到大学基本信息表格: " + university.getName());
+        }
+
+        List<Program> programs = new ArrayList<>();
+        // 获取专业表格（获取第二个匹配的表格）
+        Elements programTables = doc.select("table[border=1][width=100%][bordercolor=80000][style=border-collapse: collapse][cellpadding=0]");
+        if (programTables.size() >= 2) {
+            Element programTable = programTables.get(1);  // 获取第二个表格
+            Elements rows = programTable.select("tr");
+            for (Element row : rows) {
+                Elements cells = row.select("td");
+                if (cells.size() >= 6) {  // 确保有6个单元格
+                    // 跳过表头
+                    if (cells.get(0).text().trim().equals("No.")) {
+                        continue;
+                    }
+
+                    // 从链接中提取专业ID和参考号
+                    String programId = "";
+                    String referenceNumber = "";
+                    Element link = cells.get(1).select("a").first();
+                    if (link != null) {
+                        String href = link.attr("href");
+                        if (href.contains("NoRujA=") && href.contains("IdAkrKP=")) {
+                            referenceNumber = href.substring(href.indexOf("NoRujA=") + 7, href.indexOf("&IdAkrKP="));
+                            programId = href.substring(href.indexOf("IdAkrKP=") + 8);
+                        }
+                    }
+
+                    String programName = cells.get(1).text().trim();
+                    String type = cells.get(2).text().trim();
+                    String level = cells.get(3).text().trim();
+                    String field = cells.get(4).text().trim();
+
+                    // 跳过标题行
+                    if (programName.equals("NAME OF QUALIFICATION") ||
+                        type.equals("TYPE") ||
+                        level.equals("NO OF CREDITS") ||
+                        field.equals("NEC FIELD (National Education Code)")) {
+                        continue;
+                    }
+
+                    if (!programName.isEmpty()) {
+                        programs.add(new Program(programId, referenceNumber, programName, type, level, field));
+                    }
+                }
+            }
+        } else {
+            LOG.debug("未找到专业表格: " + university.getName());
+        }
+        return programs;
+    }
+
+    /**
+     * 把课程详情页中的信息写入 program 的详细信息
+     */
+    static void parseProgramDetails(Document doc, Program program) {
+        // 获取包含所有信息的表格
+        Element table = doc.select("table").first();
+        if (table == null) {
+            return;
+        }
+        Elements rows = table.select("tr");
+        for (Element row : rows) {
+            Elements cells = row.select("td");
+            if (cells.size() >= 3) {  // 确保至少有3个单元格（标签、冒号、值）
+                String label = cells.get(0).text().trim();
+                // 移除标签中的冒号
+                if (label.endsWith(":")) {
+                    label = label.substring(0, label.length() - 1).trim();
+                }
+                String value = cells.get(2).text().trim();  // 跳过中间的冒号单元格
+
+                // 解析基本信息字段
+                switch (label) {
+                    case "Certificate Number":
+                        program.getDetails().setCertificateNumber(value);
+                        break;
+                    case "Date of Accreditation (dd/mm/yyyy)":
+                        program.getDetails().setAccreditationDate(value);
+                        break;
+                    case "Compliance Audit":
+                        program.getDetails().setComplianceAudit(value);
+                        break;
+                    case "MQF Level":
+                        program.getDetails().setMqfLevel(value);
+                        break;
+                    case "NEC Field (National Education Code)":
+                        program.getDetails().setNecField(value);
+                        break;
+                    case "Number of Credits":
+                        program.getDetails().setNumberOfCredits(value);
+                        break;
+                    case "Mode of Study":
+                        program.getDetails().setModeOfStudy(value);
+                        break;
+                    case "Mode of Delivery":
+                        program.getDetails().setModeOfDelivery(value);
+                        break;
+                    case "Remark(s)":
+                        program.getDetails().setRemarks(value);
+                        break;
+                }
+
+                // 检查是否包含前身名称
+                if (label.equals("Name of Qualification")) {
+                    if (value.contains("Previously known as")) {
+                        int start = value.indexOf("Previously known as :") + 19;
+                        int end = value.lastIndexOf(")");
+                        if (start > 18 && end > start) {
+                            program.getDetails().setPreviousName(value.substring(start, end).trim());
+                        }
+                    }
+                }
+
+                // 解析Duration of Study表格
+                if (label.equals("Duration of Study (years)")) {
+                    parseDuration(cells.get(2), program);
+                }
+            }
+        }
+    }
+
+    private static void parseDuration(Element cell, Program program) {
+        Elements durationTables = cell.select("table");  // 获取所有表格
+        for (Element durationTable : durationTables) {
+            Elements durationRows = durationTable.select("tr");
+            String studyMode = "";  // Full Time 或 Part Time
+            String duration = "";   // Duration 值
+
+            // 获取表头（Full Time 或 Part Time）
+            Element headerRow = durationRows.first();
+            if (headerRow != null) {
+                Elements headerCells = headerRow.select("td");
+                if (!headerCells.isEmpty()) {
+                    studyMode = headerCells.first().text().trim();
+                }
+            }
+
+            // 获取 Duration 列的值（可能跨行）
+            for (Element dRow : durationRows) {
+                Elements dCells = dRow.select("td");
+                if (dCells.size() >= 4) {  // 确保有足够的列
+                    String lastCellText = dCells.last().text().trim();
+                    if (lastCellText.contains("year/s")) {
+                        duration = lastCellText;
+                        break;
+                    }
+                }
+            }
+
+            // 处理数据行
+            for (int i = 1; i < durationRows.size(); i++) {  // 跳过表头
+                Elements durationCells = durationRows.get(i).select("td");
+                if (durationCells.size() >= 3) {
+                    String type = durationCells.get(0).text().trim();
+                    String weeks = durationCells.get(1).text().trim();
+                    String semesters = durationCells.get(2).text().trim();
+
+                    // 只有当类型不为空时才添加（跳过空行）
+                    if (!type.isEmpty()) {
+                        // 创建完整的类型（例如：Full Time - Long）
+                        String fullType = studyMode + " - " + type;
+                        program.getDetails().getDurationTable().add(new DurationRow(fullType, weeks, semesters, duration));
+                    }
+                }
+            }
+        }
+
+        // 查找并解析学习进度表（通常在Duration表格之后）
+        Element scheduleTable = durationTables.last();  // 使用第三个单元格中的最后一个表格
+        if (scheduleTable != null && !durationTables.contains(scheduleTable)) {
+            Elements scheduleRows = scheduleTable.select("tr");
+            // 跳过表头
+            for (int i = 1; i < scheduleRows.size(); i++) {
+                Elements scheduleCells = scheduleRows.get(i).select("td");
+                if (scheduleCells.size() >= 6) {
+                    String starting = scheduleCells.get(0).text().trim();
+                    String weeks = scheduleCells.get(1).text().trim();
+                    String semesters = scheduleCells.get(2).text().trim();
+                    String training = scheduleCells.get(3).text().trim();
+                    String years = scheduleCells.get(4).text().trim();
+                    String credits = scheduleCells.get(5).text().trim();
+
+                    // 只有当关键值不为空时才添加
+                    if (!starting.isEmpty() && !weeks.isEmpty() && !credits.isEmpty()) {
+                        program.getDetails().getStudySchedule().add(
+                            new StudyScheduleRow(starting, weeks, semesters, training, years, credits));
+                    }
+                }
+            }
+        }
+    }
+
+    private static String findNextPageUrl(Document doc) {
+        Elements links = doc.select("a[href*=" + NEXT_PAGE_PATTERN + "]");
+        for (Element link : links) {
+            String text = link.text().trim();
+            if (text.equals("Next 25 Records") || text.equals("Next Record")) {
+                String href = link.attr("href");
+                if (href.startsWith("/")) {
+                    return "https://www2.mqa.gov.my" + href;
+                }
+                return href;
+            }
+        }
+        return null;
+    }
+}
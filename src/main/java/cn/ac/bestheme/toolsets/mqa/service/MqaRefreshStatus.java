@@ -0,0 +1,43 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * 后台采集的状态和当前快照的概况。没有对应信息的字段为 null，不输出
+ *
+ * @param state             是否正在采集
+ * @param startedAt         最近一次采集的开始时间
+ * @param finishedAt        最近一次结束的采集的结束时间
+ * @param lastResult        最近一次结束的采集的结果
+ * @param lastError         最近一次采集失败的原因
+ * @param snapshotCrawledAt 当前快照的采集完成时间
+ * @param snapshotAge       当前快照距今的秒数
+ * @param universities      当前快照中的大学数
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MqaRefreshStatus(@JsonProperty("state") State state,
+                               @JsonProperty("started_at") Instant startedAt,
+                               @JsonProperty("finished_at") Instant finishedAt,
+                               @JsonProperty("last_result") Result lastResult,
+                               @JsonProperty("last_error") String lastError,
+                               @JsonProperty("snapshot_crawled_at") Instant snapshotCrawledAt,
+                               @JsonProperty("snapshot_age_seconds") Long snapshotAge,
+                               @JsonProperty("universities") Integer universities) {
+
+    public enum State {
+        IDLE,
+        RUNNING
+    }
+
+    public enum Result {
+        // 完整采集，已替换快照
+        COMPLETED,
+        // 大学列表未完整获取，保留原来的快照
+        INCOMPLETE,
+        // 采集出错，保留原来的快照
+        FAILED
+    }
+}
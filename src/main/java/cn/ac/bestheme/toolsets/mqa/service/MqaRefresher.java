@@ -0,0 +1,180 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 在后台定时采集 MQA 网站，完整采集后由 {@link MqaSnapshotStore} 原子替换快照，接口只读取当前快照，不等待采集。
+ * 同一时间最多只有一次采集：定时任务、手动刷新和流式接口共用同一个标记，采集进行中再次刷新时返回正在进行的那一次。
+ * 采集总在后台线程中进行，流式接口通过 {@link CrawlFeed} 读取正在进行的采集结果
+ */
+@ApplicationScoped
+public class MqaRefresher {
+    private static final Logger LOG = Logger.getLogger(MqaRefresher.class);
+
+    // 启动时没有上次的采集结果则立即在后台采集一次
+    @ConfigProperty(name = "mqa.refresh.on-startup", defaultValue = "true")
+    boolean refreshOnStartup;
+
+    @Inject
+    MqaCrawler crawler;
+
+    @Inject
+    MqaSnapshotStore snapshots;
+
+    @Inject
+    MeterRegistry registry;
+
+    private final AtomicReference<Flight> inFlight = new AtomicReference<>();
+    private final Map<MqaRefreshStatus.Result, Counter> counters = new EnumMap<>(MqaRefreshStatus.Result.class);
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile MqaRefreshStatus.Result lastResult;
+    private volatile String lastError;
+
+    @PostConstruct
+    void init() {
+        for (MqaRefreshStatus.Result result : MqaRefreshStatus.Result.values()) {
+            counters.put(result, Counter.builder("mqa.refresh")
+                    .description("MQA 后台采集次数")
+                    .tag("result", result.name().toLowerCase())
+                    .register(registry));
+        }
+        Gauge.builder("mqa.snapshot.age", this, MqaRefresher::snapshotAgeSeconds)
+                .description("当前 MQA 快照距今的时间，没有快照时为 NaN")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (refreshOnStartup && snapshots.current() == null) {
+            LOG.info("没有上次的采集结果，开始后台采集");
+            refresh();
+        }
+    }
+
+    /**
+     * 按 mqa.refresh.cron 定时采集，设为 off 时不定时采集
+     */
+    @Scheduled(cron = "{mqa.refresh.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledRefresh() {
+        refresh();
+    }
+
+    /**
+     * 在后台虚拟线程中开始采集并立即返回；已有采集进行中时不再开始新的，返回正在进行的那一次。
+     * 返回的结果为大学列表是否完整获取，采集出错时异常结束
+     */
+    public CompletableFuture<Boolean> refresh() {
+        return start().result();
+    }
+
+    /**
+     * 正在进行的采集已完成的大学，没有采集进行中时开始一次后台采集
+     */
+    CrawlFeed feed() {
+        return start().feed();
+    }
+
+    /**
+     * 正在进行的采集，没有采集进行中时返回 null
+     */
+    CrawlFeed runningFeed() {
+        Flight flight = inFlight.get();
+        return flight != null ? flight.feed() : null;
+    }
+
+    private Flight start() {
+        Flight flight = new Flight(new CompletableFuture<>(), new CrawlFeed());
+        Flight running = inFlight.compareAndExchange(null, flight);
+        if (running != null) {
+            return running;
+        }
+        Thread.ofVirtual().name("mqa-refresh").start(() -> {
+            try {
+                run(flight);
+            } catch (IOException | RuntimeException e) {
+                // 已在 run 中记录
+            }
+        });
+        return flight;
+    }
+
+    public boolean isRunning() {
+        return inFlight.get() != null;
+    }
+
+    public MqaRefreshStatus status() {
+        MqaSnapshot snapshot = snapshots.current();
+        return new MqaRefreshStatus(
+                isRunning() ? MqaRefreshStatus.State.RUNNING : MqaRefreshStatus.State.IDLE,
+                startedAt,
+                finishedAt,
+                lastResult,
+                lastError,
+                snapshot != null ? snapshot.crawledAt() : null,
+                snapshot != null ? age(snapshot).toSeconds() : null,
+                snapshot != null ? snapshot.universities().size() : null);
+    }
+
+    /**
+     * 快照采集完成至今的时间
+     */
+    public static Duration age(MqaSnapshot snapshot) {
+        return Duration.between(snapshot.crawledAt(), Instant.now());
+    }
+
+    private void run(Flight flight) throws IOException {
+        startedAt = Instant.now();
+        MqaRefreshStatus.Result result = MqaRefreshStatus.Result.FAILED;
+        String error = null;
+        Throwable failure = null;
+        try {
+            result = crawler.crawl(flight.feed()::add)
+                    ? MqaRefreshStatus.Result.COMPLETED : MqaRefreshStatus.Result.INCOMPLETE;
+        } catch (Throwable e) {
+            LOG.error("MQA 采集失败", e);
+            failure = e;
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            lastResult = result;
+            lastError = error;
+            finishedAt = Instant.now();
+            counters.get(result).increment();
+            // 先清除标记再通知等待者，等待者收到结果后再次刷新时会开始新的采集
+            inFlight.set(null);
+            flight.feed().finish();
+            if (failure != null) {
+                flight.result().completeExceptionally(failure);
+            } else {
+                flight.result().complete(result == MqaRefreshStatus.Result.COMPLETED);
+            }
+        }
+    }
+
+    private record Flight(CompletableFuture<Boolean> result, CrawlFeed feed) {
+    }
+
+    private double snapshotAgeSeconds() {
+        MqaSnapshot snapshot = snapshots.current();
+        return snapshot != null ? age(snapshot).toMillis() / 1000.0 : Double.NaN;
+    }
+}
@@ -0,0 +1,21 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import cn.ac.bestheme.toolsets.mqa.model.University;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 一次完整采集的结果。发布后不再修改，下一次采集只读取其中的对象，需要改动时复制一份
+ *
+ * @param crawledAt    采集完成的时间
+ * @param universities 按网站列表顺序排列的大学
+ */
+public record MqaSnapshot(@JsonProperty("crawled_at") Instant crawledAt,
+                          @JsonProperty("universities") List<University> universities) {
+
+    public MqaSnapshot {
+        universities = List.copyOf(universities);
+    }
+}
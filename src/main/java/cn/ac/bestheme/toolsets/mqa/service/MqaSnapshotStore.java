@@ -0,0 +1,91 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 保存最近一次完整采集的结果，供下一次增量采集比较。结果同时写入 JSON 文件，服务重启后仍可增量采集。
+ * 快照与其课程索引一起发布，查询不会读到与快照不一致的索引，也不必在查询时建立索引
+ */
+@ApplicationScoped
+public class MqaSnapshotStore {
+    private static final Logger LOG = Logger.getLogger(MqaSnapshotStore.class);
+
+    // 采集结果文件，未配置时使用系统临时目录下的 mqa-snapshot.json
+    @ConfigProperty(name = "mqa.snapshot.file")
+    Optional<String> file;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    private Path snapshotFile;
+    // 当前快照的课程索引，快照本身通过 ProgramIndex.snapshot() 取得
+    private volatile ProgramIndex current;
+
+    @PostConstruct
+    void init() {
+        snapshotFile = file.map(Path::of).orElse(Path.of(System.getProperty("java.io.tmpdir"), "mqa-snapshot.json"));
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(snapshotFile)) {
+            MqaSnapshot snapshot = objectMapper.readValue(in, MqaSnapshot.class);
+            current = ProgramIndex.build(snapshot);
+            LOG.info("已加载上次的采集结果: " + snapshotFile + "，大学 " + snapshot.universities().size()
+                    + " 所，采集于 " + snapshot.crawledAt());
+        } catch (IOException e) {
+            LOG.warn("上次的采集结果无法读取，下次将完整采集: " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * 最近一次完整采集的结果，从未采集过时为 null
+     */
+    public MqaSnapshot current() {
+        ProgramIndex index = current;
+        return index != null ? index.snapshot() : null;
+    }
+
+    /**
+     * 当前快照的课程索引，从未采集过时为 null
+     */
+    ProgramIndex index() {
+        return current;
+    }
+
+    /**
+     * 保存新的采集结果。先建立课程索引再与快照一起发布；文件先写入临时文件再原子替换，写文件失败时仍在内存中保留新结果
+     */
+    public void save(MqaSnapshot snapshot) {
+        current = ProgramIndex.build(snapshot);
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                objectMapper.writeValue(out, snapshot);
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("保存采集结果失败: " + snapshotFile, e);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // 临时文件残留不影响下次读取
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 采集页面的磁盘缓存，按地址保存页面内容、ETag、Last-Modified 和获取时间，服务重启后仍然有效。
+ * 获取时间在 ttl 以内的页面直接使用缓存，不发请求；过期的页面由 {@link MqaFetcher} 带上验证信息发条件请求，
+ * 服务器返回 304 时只更新获取时间。
+ */
+@ApplicationScoped
+public class PageCache {
+    private static final Logger LOG = Logger.getLogger(PageCache.class);
+    private static final String SUFFIX = ".page";
+    private static final int FORMAT_VERSION = 1;
+
+    // 是否启用页面缓存
+    @ConfigProperty(name = "mqa.cache.enabled", defaultValue = "true")
+    boolean enabled;
+
+    // 缓存页面的有效期，有效期内不再请求；0 表示每次都发条件请求验证
+    @ConfigProperty(name = "mqa.cache.ttl", defaultValue = "12h")
+    Duration ttl;
+
+    // 缓存目录，未配置时使用系统临时目录下的 mqa-page-cache
+    @ConfigProperty(name = "mqa.cache.directory")
+    Optional<String> directory;
+
+    private Path cacheDirectory;
+
+    /**
+     * 缓存的页面。etag、lastModified、charset 在服务器没有提供时为 null
+     */
+    public record Entry(String url, String etag, String lastModified, Instant fetchedAt, String charset, byte[] body) {
+
+        Document parse() throws IOException {
+            return Jsoup.parse(new ByteArrayInputStream(body), charset, url);
+        }
+
+        Entry revalidatedAt(Instant time) {
+            return new Entry(url, etag, lastModified, time, charset, body);
+        }
+
+        boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            cacheDirectory = Files.createDirectories(directory.map(Path::of)
+                    .orElse(Path.of(System.getProperty("java.io.tmpdir"), "mqa-page-cache")));
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法创建页面缓存目录", e);
+        }
+        LOG.info("MQA 页面缓存目录: " + cacheDirectory + "，有效期 " + ttl);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 页面是否仍在有效期内，可以不发请求直接使用
+     */
+    boolean isFresh(Entry entry, Instant now) {
+        return entry.fetchedAt().plus(ttl).isAfter(now);
+    }
+
+    /**
+     * 读取缓存的页面，没有缓存或文件损坏时返回 null
+     */
+    Entry get(String url) {
+        if (!enabled) {
+            return null;
+        }
+        Path file = file(url);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            String storedUrl = in.readUTF();
+            if (!storedUrl.equals(url)) {
+                return null;
+            }
+            String etag = readOptional(in);
+            String lastModified = readOptional(in);
+            Instant fetchedAt = Instant.ofEpochMilli(in.readLong());
+            String charset = readOptional(in);
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(url, etag, lastModified, fetchedAt, charset, body);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("页面缓存文件无法读取，将重新获取: " + url, e);
+            return null;
+        }
+    }
+
+    /**
+     * 保存页面。先写入临时文件再原子替换，并发写入同一地址时以最后完成的为准
+     */
+    void put(Entry entry) {
+        if (!enabled) {
+            return;
+        }
+        Path file = file(entry.url());
+        Path temp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(entry.url());
+                writeOptional(out, entry.etag());
+                writeOptional(out, entry.lastModified());
+                out.writeLong(entry.fetchedAt().toEpochMilli());
+                writeOptional(out, entry.charset());
+                out.writeInt(entry.body().length);
+                out.write(entry.body());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("保存页面缓存失败: " + entry.url(), e);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // 临时文件残留不影响读取
+            }
+        }
+    }
+
+    private Path file(String url) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return cacheDirectory.resolve(HexFormat.of().formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8))) + SUFFIX);
+    }
+
+    private static String readOptional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import cn.ac.bestheme.toolsets.mqa.model.Program;
+import cn.ac.bestheme.toolsets.mqa.model.Program.ProgramDetails.DurationRow;
+import cn.ac.bestheme.toolsets.mqa.model.University;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 一个快照中全部课程的内存索引，建立后不再修改，可以被多个线程同时查询。
+ * 课程按快照中的顺序编号；州属、类型、等级、NEC 领域、学习模式各有一个从取值到课程编号的散列索引，
+ * 课程名称和大学名称按词建立倒排索引。每个取值对应的编号按升序保存在 int 数组中，
+ * 查询时从最短的数组开始在其余数组中二分查找求交集，结果自然按快照顺序排列
+ */
+final class ProgramIndex {
+    private static final int[] NONE = new int[0];
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // 学习模式可能写成 "Full Time, Part Time"、"Full Time / Part Time" 或 "Full Time & Part Time"
+    private static final Pattern MODE_SEPARATOR = Pattern.compile("\\s*(?:[,/&;]|\\band\\b)\\s*", Pattern.CASE_INSENSITIVE);
+
+    private final MqaSnapshot snapshot;
+    private final ProgramSearchResult.Item[] items;
+    private final int[] all;
+    private final int[] active;
+    private final Map<String, int[]> states;
+    private final Map<String, int[]> types;
+    private final Map<String, int[]> levels;
+    private final Map<String, int[]> fields;
+    private final Map<String, int[]> modes;
+    private final Map<String, int[]> nameTokens;
+    private final Map<String, int[]> universityTokens;
+
+    private ProgramIndex(MqaSnapshot snapshot, ProgramSearchResult.Item[] items, int[] active,
+                         Postings states, Postings types, Postings levels, Postings fields, Postings modes,
+                         Postings nameTokens, Postings universityTokens) {
+        this.snapshot = snapshot;
+        this.items = items;
+        this.all = new int[items.length];
+        Arrays.setAll(all, i -> i);
+        this.active = active;
+        this.states = states.freeze();
+        this.types = types.freeze();
+        this.levels = levels.freeze();
+        this.fields = fields.freeze();
+        this.modes = modes.freeze();
+        this.nameTokens = nameTokens.freeze();
+        this.universityTokens = universityTokens.freeze();
+    }
+
+    static ProgramIndex build(MqaSnapshot snapshot) {
+        List<ProgramSearchResult.Item> items = new ArrayList<>();
+        Postings active = new Postings();
+        Postings states = new Postings();
+        Postings types = new Postings();
+        Postings levels = new Postings();
+        Postings fields = new Postings();
+        Postings modes = new Postings();
+        Postings nameTokens = new Postings();
+        Postings universityTokens = new Postings();
+
+        for (University university : snapshot.universities()) {
+            String state = normalize(university.getState());
+            List<String> universityWords = tokens(university.getName());
+            for (Program program : university.getPrograms()) {
+                int id = items.size();
+                items.add(new ProgramSearchResult.Item(university.getId(), university.getName(),
+                        university.getState(), program));
+                if (!program.isRemoved()) {
+                    active.add("", id);
+                }
+                states.add(state, id);
+                types.add(normalize(program.getType()), id);
+                levels.add(normalize(program.getLevel()), id);
+                fields.add(normalize(program.getField()), id);
+                Program.ProgramDetails details = program.getDetails();
+                if (details != null) {
+                    levels.add(normalize(details.getMqfLevel()), id);
+                    fields.add(normalize(details.getNecField()), id);
+                    if (details.getModeOfStudy() != null) {
+                        for (String mode : MODE_SEPARATOR.split(details.getModeOfStudy())) {
+                            modes.add(normalizeMode(mode), id);
+                        }
+                    }
+                    if (details.getDurationTable() != null) {
+                        for (DurationRow row : details.getDurationTable()) {
+                            modes.add(normalizeMode(row.getType()), id);
+                        }
+                    }
+                }
+                for (String token : tokens(program.getName())) {
+                    nameTokens.add(token, id);
+                }
+                for (String token : universityWords) {
+                    universityTokens.add(token, id);
+                }
+            }
+        }
+        return new ProgramIndex(snapshot, items.toArray(new ProgramSearchResult.Item[0]),
+                active.get(""), states, types, levels, fields, modes, nameTokens, universityTokens);
+    }
+
+    MqaSnapshot snapshot() {
+        return snapshot;
+    }
+
+    ProgramSearchResult search(ProgramQuery query) {
+        List<int[]> filters = new ArrayList<>();
+        if (!query.includeRemoved()) {
+            filters.add(active);
+        }
+        addValues(filters, states, query.states(), false);
+        addValues(filters, types, query.types(), false);
+        addValues(filters, levels, query.levels(), false);
+        addValues(filters, fields, query.fields(), false);
+        addValues(filters, modes, query.modes(), true);
+        addTokens(filters, nameTokens, query.name());
+        addTokens(filters, universityTokens, query.university());
+
+        int[] matches = filters.isEmpty() ? all : intersect(filters);
+        int from = Math.min(query.offset(), matches.length);
+        int to = (int) Math.min((long) from + query.limit(), matches.length);
+        List<ProgramSearchResult.Item> page = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            page.add(items[matches[i]]);
+        }
+        return new ProgramSearchResult(snapshot.crawledAt(), matches.length, query.offset(), query.limit(), page);
+    }
+
+    /**
+     * 同一条件的多个值取并集后作为一个过滤条件
+     */
+    private static void addValues(List<int[]> filters, Map<String, int[]> index, List<String> values, boolean mode) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        int[] union = NONE;
+        for (String value : values) {
+            String key = mode ? normalizeMode(value) : normalize(value);
+            union = union(union, key != null ? index.getOrDefault(key, NONE) : NONE);
+        }
+        filters.add(union);
+    }
+
+    /**
+     * 每个词各自作为一个过滤条件，即全部词都必须出现
+     */
+    private static void addTokens(List<int[]> filters, Map<String, int[]> index, String text) {
+        for (String token : tokens(text)) {
+            filters.add(index.getOrDefault(token, NONE));
+        }
+    }
+
+    private static int[] intersect(List<int[]> filters) {
+        filters.sort(Comparator.comparingInt(postings -> postings.length));
+        int[] result = filters.get(0);
+        for (int f = 1; f < filters.size() && result.length > 0; f++) {
+            int[] other = filters.get(f);
+            int[] retained = new int[result.length];
+            int count = 0;
+            int from = 0;
+            for (int id : result) {
+                int found = Arrays.binarySearch(other, from, other.length, id);
+                if (found >= 0) {
+                    retained[count++] = id;
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+            }
+            result = Arrays.copyOf(retained, count);
+        }
+        return result;
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] merged = new int[a.length + b.length];
+        int i = 0, j = 0, count = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j == b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        return Arrays.copyOf(merged, count);
+    }
+
+    /**
+     * 忽略大小写和多余空格，空值返回 null
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String normalized = WHITESPACE.matcher(value.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    // "Full-Time" 与 "Full Time" 视为相同
+    private static String normalizeMode(String value) {
+        return value == null ? null : normalize(value.replace('-', ' '));
+    }
+
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty() && !tokens.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 建立索引时按取值收集课程编号。编号按升序加入，同一课程重复加入同一取值时只保留一次
+     */
+    private static final class Postings {
+        private final Map<String, int[]> arrays = new HashMap<>();
+        private final Map<String, Integer> sizes = new HashMap<>();
+
+        void add(String key, int id) {
+            if (key == null) {
+                return;
+            }
+            int[] array = arrays.get(key);
+            int size = sizes.getOrDefault(key, 0);
+            if (array == null) {
+                array = new int[4];
+                arrays.put(key, array);
+            } else if (array[size - 1] == id) {
+                return;
+            } else if (size == array.length) {
+                array = Arrays.copyOf(array, size * 2);
+                arrays.put(key, array);
+            }
+            array[size] = id;
+            sizes.put(key, size + 1);
+        }
+
+        int[] get(String key) {
+            int[] array = arrays.get(key);
+            return array == null ? NONE : Arrays.copyOf(array, sizes.get(key));
+        }
+
+        Map<String, int[]> freeze() {
+            Map<String, int[]> frozen = new HashMap<>(arrays.size() * 2);
+            for (String key : arrays.keySet()) {
+                frozen.put(key, get(key));
+            }
+            return frozen;
+        }
+    }
+}
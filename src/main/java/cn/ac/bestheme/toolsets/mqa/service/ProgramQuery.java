@@ -0,0 +1,30 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import java.util.List;
+
+/**
+ * 课程查询条件。同一条件的多个值之间为“或”，不同条件之间为“且”；空列表或 null 表示不限制。
+ * 字段比较时忽略大小写和多余空格
+ *
+ * @param states         大学所在州属
+ * @param types          课程类型
+ * @param levels         课程等级，也可以是 MQF 等级
+ * @param fields         NEC 领域
+ * @param modes          学习模式（Full Time、Part Time 等）
+ * @param name           课程名称中的词，多个词时必须全部出现
+ * @param university     大学名称中的词，多个词时必须全部出现
+ * @param includeRemoved 是否包含已从网站删除的课程
+ * @param offset         跳过的结果数
+ * @param limit          最多返回的结果数
+ */
+public record ProgramQuery(List<String> states,
+                           List<String> types,
+                           List<String> levels,
+                           List<String> fields,
+                           List<String> modes,
+                           String name,
+                           String university,
+                           boolean includeRemoved,
+                           int offset,
+                           int limit) {
+}
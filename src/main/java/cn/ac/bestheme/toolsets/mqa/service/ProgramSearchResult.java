@@ -0,0 +1,32 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import cn.ac.bestheme.toolsets.mqa.model.Program;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 一页课程查询结果，按快照中大学和课程的顺序排列
+ *
+ * @param crawledAt 查询所用快照的采集完成时间
+ * @param total     符合条件的课程总数
+ * @param offset    本页第一条在全部结果中的位置
+ * @param limit     每页最多返回的结果数
+ * @param items     本页的课程
+ */
+public record ProgramSearchResult(@JsonProperty("crawled_at") Instant crawledAt,
+                                  @JsonProperty("total") int total,
+                                  @JsonProperty("offset") int offset,
+                                  @JsonProperty("limit") int limit,
+                                  @JsonProperty("items") List<Item> items) {
+
+    /**
+     * 课程及其所属大学的基本信息
+     */
+    public record Item(@JsonProperty("university_id") String universityId,
+                       @JsonProperty("university_name") String universityName,
+                       @JsonProperty("state") String state,
+                       @JsonProperty("program") Program program) {
+    }
+}
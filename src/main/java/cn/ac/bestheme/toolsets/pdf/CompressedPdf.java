@@ -0,0 +1,118 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import io.micrometer.core.instrument.Timer;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 已完成图片压缩、尚未序列化的PDF文档。
+ * 调用 {@link #writeTo(OutputStream)} 时才把文档直接写入目标输出流，
+ * 避免整份压缩结果以 byte[] 的形式驻留在堆内存中。使用完毕后必须关闭，关闭时同时归还文档占用的内存额度。
+ */
+public class CompressedPdf implements Closeable {
+    private final PDDocument document;
+    private final MemoryBudget.Lease memoryLease;
+    private final CompressionStats stats;
+    private final CompressionMetrics metrics;
+    private final long inputSize;
+    private final boolean linearize;
+    // 线性化时使用的临时文件目录，为 null 时使用系统临时目录
+    private final Path tempDirectory;
+    private boolean closed;
+
+    CompressedPdf(PDDocument document, MemoryBudget.Lease memoryLease, CompressionStats stats,
+                  CompressionMetrics metrics, long inputSize, boolean linearize, Path tempDirectory) {
+        this.document = document;
+        this.memoryLease = memoryLease;
+        this.stats = stats;
+        this.metrics = metrics;
+        this.inputSize = inputSize;
+        this.linearize = linearize;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public CompressionStats getStats() {
+        return stats;
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        Timer.Sample sample = Timer.start();
+        if (linearize) {
+            saveLinearized(countingStream);
+        } else {
+            document.save(countingStream);
+        }
+        sample.stop(metrics.timer(CompressionMetrics.Stage.SAVE));
+        metrics.recordOutput(inputSize, countingStream.count);
+    }
+
+    /**
+     * 先照常保存到临时文件，再从文件重新加载后线性化写出：
+     * 只有从文件解析得到的对象才能准确区分直接对象和间接对象
+     */
+    private void saveLinearized(OutputStream outputStream) throws IOException {
+        Path saved = tempDirectory != null
+                ? Files.createTempFile(tempDirectory, "compressed", ".pdf")
+                : Files.createTempFile("compressed", ".pdf");
+        try {
+            document.save(saved.toFile());
+            MemoryUsageSetting setting = MemoryUsageSetting.setupTempFileOnly();
+            if (tempDirectory != null) {
+                setting.setTempDir(tempDirectory.toFile());
+            }
+            try (PDDocument reloaded = PDDocument.load(saved.toFile(), setting)) {
+                PdfLinearizer.write(reloaded, tempDirectory, outputStream);
+            }
+        } finally {
+            Files.deleteIfExists(saved);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            document.close();
+        } finally {
+            try {
+                memoryLease.close();
+            } finally {
+                metrics.compressionFinished();
+            }
+        }
+    }
+
+    /**
+     * 统计写出的字节数，用于记录压缩后的大小
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PDF压缩流程的监控指标，通过 /q/metrics 导出：
+ * 各阶段耗时、输入输出大小与压缩率的分布、处理和跳过的图片数、正在进行的压缩数。
+ */
+@ApplicationScoped
+public class CompressionMetrics {
+    // 压缩率（输出/输入）分布的桶边界
+    private static final double[] RATIO_BUCKETS = {0.05, 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0};
+
+    enum Stage {
+        // 解析PDF
+        LOAD,
+        // 解码图片
+        DECODE,
+        // 缩放图片
+        SCALE,
+        // 编码图片
+        ENCODE,
+        // 序列化压缩后的文档
+        SAVE
+    }
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<ImageDecision.Rule, Counter> imageCounters = new EnumMap<>(ImageDecision.Rule.class);
+    private final DistributionSummary inputSize;
+    private final DistributionSummary outputSize;
+    private final DistributionSummary ratio;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final MeterRegistry registry;
+    private final Counter rejected;
+
+    @Inject
+    public CompressionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("pdf.compress.stage")
+                    .description("PDF压缩各阶段耗时")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        for (ImageDecision.Rule rule : ImageDecision.Rule.values()) {
+            boolean skipped = rule.action() == ImageDecision.Action.SKIP;
+            imageCounters.put(rule, Counter.builder("pdf.compress.images")
+                    .description("处理或跳过的图片数")
+                    .tag("outcome", skipped ? "skipped" : "processed")
+                    .tag("rule", rule.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        inputSize = DistributionSummary.builder("pdf.compress.input.size")
+                .description("压缩前的文件大小")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry);
+        outputSize = DistributionSummary.builder("pdf.compress.output.size")
+                .description("压缩后的文件大小")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry);
+        ratio = DistributionSummary.builder("pdf.compress.ratio")
+                .description("压缩后与压缩前的大小之比")
+                .serviceLevelObjectives(RATIO_BUCKETS)
+                .register(registry);
+        Gauge.builder("pdf.compress.in.flight", inFlight, AtomicInteger::get)
+                .description("正在进行的压缩数（从开始解析到结果写出）")
+                .register(registry);
+        rejected = Counter.builder("pdf.compress.rejected")
+                .description("因图片解码内存不足而拒绝的文档数")
+                .register(registry);
+    }
+
+    /**
+     * 导出图片解码内存预算的总额和已预留的字节数
+     */
+    void monitor(DecodeBudget budget) {
+        Gauge.builder("pdf.decode.budget.reserved", budget, DecodeBudget::reserved)
+                .description("已预留的图片解码内存（估算）")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("pdf.decode.budget.total", budget, DecodeBudget::total)
+                .description("图片解码内存预算")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    Timer timer(Stage stage) {
+        return stageTimers.get(stage);
+    }
+
+    void recordImage(ImageDecision.Rule rule) {
+        imageCounters.get(rule).increment();
+    }
+
+    void recordInput(long bytes) {
+        inputSize.record(bytes);
+    }
+
+    void recordOutput(long inputBytes, long outputBytes) {
+        outputSize.record(outputBytes);
+        if (inputBytes > 0) {
+            ratio.record((double) outputBytes / inputBytes);
+        }
+    }
+
+    void compressionStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    void compressionFinished() {
+        inFlight.decrementAndGet();
+    }
+}
@@ -0,0 +1,61 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+/**
+ * 单次压缩请求的参数
+ */
+public class CompressionOptions {
+    // 目标文件大小（字节），为空时使用固定的图片质量和尺寸
+    private Long targetSize;
+    // 图片缩放算法
+    private ScalingAlgorithm scaling = ScalingAlgorithm.BILINEAR;
+    // 压缩配置；指定目标大小时，图片质量和最大边长由目标大小决定，分辨率上限和颜色处理仍按配置
+    private CompressionProfile profile = CompressionProfile.EBOOK;
+    // 是否输出线性化（快速网页查看）的PDF
+    private boolean linearize;
+
+    public static CompressionOptions defaults() {
+        return new CompressionOptions();
+    }
+
+    public Long getTargetSize() {
+        return targetSize;
+    }
+
+    public void setTargetSize(Long targetSize) {
+        if (targetSize != null && targetSize <= 0) {
+            throw new IllegalArgumentException("目标文件大小必须大于0");
+        }
+        this.targetSize = targetSize;
+    }
+
+    public ScalingAlgorithm getScaling() {
+        return scaling;
+    }
+
+    public void setScaling(ScalingAlgorithm scaling) {
+        this.scaling = scaling != null ? scaling : ScalingAlgorithm.BILINEAR;
+    }
+
+    public CompressionProfile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(CompressionProfile profile) {
+        this.profile = profile != null ? profile : CompressionProfile.EBOOK;
+    }
+
+    public boolean isLinearize() {
+        return linearize;
+    }
+
+    public void setLinearize(boolean linearize) {
+        this.linearize = linearize;
+    }
+
+    /**
+     * 影响压缩结果的全部参数，用于结果缓存的键。新增参数时必须一并加入
+     */
+    String fingerprint() {
+        return "targetSize=" + targetSize + ";scaling=" + scaling + ";profile=" + profile + ";linearize=" + linearize;
+    }
+}
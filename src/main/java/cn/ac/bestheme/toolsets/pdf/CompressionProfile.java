@@ -0,0 +1,58 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import java.util.Locale;
+
+/**
+ * 按用途预设的压缩配置，每个配置包含图片质量、最大边长、分辨率上限和颜色处理方式
+ */
+public enum CompressionProfile {
+    // 屏幕阅读、邮件附件：文件最小
+    SCREEN(new ImageSettings(0.4f, 800), 72, ColorHandling.CONVERT_TO_RGB),
+    // 电子书、一般阅读：默认配置
+    EBOOK(ImageSettings.DEFAULT, 150, ColorHandling.CONVERT_TO_RGB),
+    // 打印、存档：保真度优先，保留 CMYK 图片以免印刷偏色
+    PRINT(new ImageSettings(0.8f, 2400), 300, ColorHandling.PRESERVE_CMYK);
+
+    public enum ColorHandling {
+        // 所有图片重新编码为 RGB（或灰度）JPEG
+        CONVERT_TO_RGB,
+        // 四分量（CMYK 等）图片保持原样
+        PRESERVE_CMYK
+    }
+
+    private final ImageSettings imageSettings;
+    private final int maxDpi;
+    private final ColorHandling colorHandling;
+
+    CompressionProfile(ImageSettings imageSettings, int maxDpi, ColorHandling colorHandling) {
+        this.imageSettings = imageSettings;
+        this.maxDpi = maxDpi;
+        this.colorHandling = colorHandling;
+    }
+
+    ImageSettings imageSettings() {
+        return imageSettings;
+    }
+
+    /**
+     * 图片铺满所在页面时的分辨率上限（每英寸像素数），像素更多的图片会被缩小
+     */
+    public int maxDpi() {
+        return maxDpi;
+    }
+
+    public ColorHandling colorHandling() {
+        return colorHandling;
+    }
+
+    /**
+     * 按名称（不区分大小写）查找配置，名称无效时抛出 IllegalArgumentException
+     */
+    public static CompressionProfile fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的压缩配置: " + name);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 一次压缩的统计：每条规则处理或跳过了多少张图片，以及结构优化节省的字节数
+ */
+public class CompressionStats {
+    private final Map<ImageDecision.Rule, Integer> counts = new EnumMap<>(ImageDecision.Rule.class);
+    private int references;
+    private int grayscale;
+    private int peakDecodes;
+    private Map<StructureOptimizer.Category, Long> structureSavings = Map.of();
+
+    void record(ImageDecision.Rule rule) {
+        counts.merge(rule, 1, Integer::sum);
+    }
+
+    void recordGrayscale() {
+        grayscale++;
+    }
+
+    void setReferences(int references) {
+        this.references = references;
+    }
+
+    void setPeakDecodes(int peakDecodes) {
+        this.peakDecodes = peakDecodes;
+    }
+
+    /**
+     * 同时解码的图片数的最大值，不输出到 JSON
+     */
+    int getPeakDecodes() {
+        return peakDecodes;
+    }
+
+    void setStructureSavings(Map<StructureOptimizer.Category, Long> structureSavings) {
+        this.structureSavings = structureSavings;
+    }
+
+    /**
+     * 文档中不重复的图片数
+     */
+    @JsonProperty("images")
+    public int getImages() {
+        return counts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * 图片被页面引用的总次数
+     */
+    @JsonProperty("references")
+    public int getReferences() {
+        return references;
+    }
+
+    @JsonProperty("downscaled")
+    public int getDownscaled() {
+        return count(ImageDecision.Action.DOWNSCALE);
+    }
+
+    @JsonProperty("reencoded")
+    public int getReencoded() {
+        return count(ImageDecision.Action.REENCODE);
+    }
+
+    /**
+     * 重新编码为单通道灰度的图片数
+     */
+    @JsonProperty("grayscale")
+    public int getGrayscale() {
+        return grayscale;
+    }
+
+    @JsonProperty("skipped")
+    public int getSkipped() {
+        return count(ImageDecision.Action.SKIP);
+    }
+
+    /**
+     * 按规则统计跳过的图片数，键为规则名（小写）
+     */
+    @JsonProperty("skipped_by_rule")
+    public Map<String, Integer> getSkippedByRule() {
+        Map<String, Integer> skipped = new LinkedHashMap<>();
+        counts.forEach((rule, count) -> {
+            if (rule.action() == ImageDecision.Action.SKIP) {
+                skipped.put(rule.name().toLowerCase(Locale.ROOT), count);
+            }
+        });
+        return skipped;
+    }
+
+    /**
+     * 结构优化按类别节省的字节数（按原数据流长度估算），键为类别名（小写）
+     */
+    @JsonProperty("structure_savings")
+    public Map<String, Long> getStructureSavings() {
+        Map<String, Long> savings = new LinkedHashMap<>();
+        structureSavings.forEach((category, bytes) -> savings.put(category.name().toLowerCase(Locale.ROOT), bytes));
+        return savings;
+    }
+
+    private int count(ImageDecision.Action action) {
+        int total = 0;
+        for (Map.Entry<ImageDecision.Rule, Integer> entry : counts.entrySet()) {
+            if (entry.getKey().action() == action) {
+                total += entry.getValue();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "图片 " + getImages() + " 张（被引用 " + references + " 次），缩小 " + getDownscaled()
+                + " 张，重新编码 " + getReencoded() + " 张，输出灰度 " + grayscale + " 张，跳过 " + getSkipped()
+                + " 张 " + getSkippedByRule() + "，同时解码最多 " + peakDecodes + " 张";
+    }
+}
@@ -0,0 +1,163 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+
+/**
+ * 所有并发请求共享的图片解码内存预算，按解码前根据图片尺寸估算的字节数计算。
+ * 每个文档先为其中最大的几张图片（张数与图片线程数相同）预留额度（超过总预算时按总预算），总额不足时最多等待一段时间，
+ * 仍然不足则拒绝该文档（后台任务不设上限，一直等待）；文档内的图片再从自己的预留额度中申请，额度用完时等待其他图片处理完毕。
+ * 因此空闲时文档的图片可以占满所有线程；预算紧张时超大图片的文档要等到足够的额度，或者（超过总预算时）独占预算依次处理。
+ */
+final class DecodeBudget {
+    private final long total;
+    private long available;
+
+    DecodeBudget(long total) {
+        this.total = total;
+        this.available = total;
+    }
+
+    /**
+     * 预留 bytes 字节（超过总预算时按总预算），最多等待 timeout，超时返回 null；timeout 为 null 时一直等待。
+     * 使用完毕后必须关闭返回的预留额度
+     */
+    synchronized Reservation reserve(long bytes, Duration timeout) throws InterruptedIOException {
+        long requested = Math.min(Math.max(bytes, 0), total);
+        long deadline = timeout != null ? System.nanoTime() + timeout.toNanos() : 0;
+        try {
+            while (available < requested) {
+                if (timeout == null) {
+                    wait();
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                wait(Math.max(1, remaining / 1_000_000));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待图片解码内存时被中断");
+        }
+        available -= requested;
+        return new Reservation(requested);
+    }
+
+    synchronized long reserved() {
+        return total - available;
+    }
+
+    long total() {
+        return total;
+    }
+
+    private synchronized void release(long bytes) {
+        available += bytes;
+        notifyAll();
+    }
+
+    /**
+     * 一个文档的预留额度，文档内的图片解码前从中申请。
+     * 关闭时若仍有图片持有额度（例如出错后尚未结束的解码任务），等最后一份额度归还后才把预留额度还给总预算
+     */
+    final class Reservation implements Closeable {
+        private final long bytes;
+        private long available;
+        private int leases;
+        private int peakLeases;
+        private boolean closed;
+        private boolean released;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+            this.available = bytes;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        /**
+         * 同时持有额度（即同时解码）的图片数的最大值
+         */
+        synchronized int peakLeases() {
+            return peakLeases;
+        }
+
+        /**
+         * 申请 requested 字节（超过预留额度时按预留额度），额度不足时等待
+         */
+        synchronized Lease acquire(long requested) throws InterruptedIOException {
+            long granted = Math.min(Math.max(requested, 0), bytes);
+            try {
+                while (available < granted) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待图片解码内存时被中断");
+            }
+            available -= granted;
+            leases++;
+            peakLeases = Math.max(peakLeases, leases);
+            return new Lease(granted);
+        }
+
+        private void giveBack(long granted) {
+            synchronized (this) {
+                available += granted;
+                leases--;
+                notifyAll();
+                if (!releasable()) {
+                    return;
+                }
+            }
+            release(bytes);
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                if (!releasable()) {
+                    return;
+                }
+            }
+            release(bytes);
+        }
+
+        /**
+         * 已关闭且没有未归还的额度时，只返回一次 true。在持有本对象锁时调用，总预算的锁在释放本对象锁后再获取
+         */
+        private boolean releasable() {
+            if (!closed || leases > 0 || released) {
+                return false;
+            }
+            released = true;
+            return true;
+        }
+
+        final class Lease implements Closeable {
+            private final long granted;
+            private boolean released;
+
+            private Lease(long granted) {
+                this.granted = granted;
+            }
+
+            @Override
+            public void close() {
+                synchronized (this) {
+                    if (released) {
+                        return;
+                    }
+                    released = true;
+                }
+                giveBack(granted);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 在工作线程中完成编码、等待写回文档的图片。
+ * 编码不依赖 PDDocument，可以并行执行；{@link #toXObject(PDDocument)} 会修改文档，只能串行调用。
+ */
+final class EncodedImage {
+    private final byte[] jpegData;
+    private final byte[] alphaData;
+    private final int width;
+    private final int height;
+    private final PDColorSpace colorSpace;
+
+    private EncodedImage(byte[] jpegData, byte[] alphaData, int width, int height, PDColorSpace colorSpace) {
+        this.jpegData = jpegData;
+        this.alphaData = alphaData;
+        this.width = width;
+        this.height = height;
+        this.colorSpace = colorSpace;
+    }
+
+    /**
+     * 把图片编码为 JPEG。带透明通道的图片拆分为 JPEG 颜色数据和 Flate 压缩的透明度数据，
+     * 写回时后者作为 SMask 附加到图片上。
+     */
+    static EncodedImage encode(BufferedImage image, float quality) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        if (image.getColorModel().hasAlpha()) {
+            BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            byte[] alpha = new byte[width * height];
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                rgb.setRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    alpha[y * width + x] = (byte) (row[x] >>> 24);
+                }
+            }
+            return new EncodedImage(writeJpeg(rgb, quality), deflate(alpha), width, height, PDDeviceRGB.INSTANCE);
+        }
+
+        BufferedImage source = image;
+        PDColorSpace colorSpace = PDDeviceGray.INSTANCE;
+        if (image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+            colorSpace = PDDeviceRGB.INSTANCE;
+            if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+                source = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = source.createGraphics();
+                try {
+                    g.drawImage(image, 0, 0, null);
+                } finally {
+                    g.dispose();
+                }
+            }
+        }
+        return new EncodedImage(writeJpeg(source, quality), null, width, height, colorSpace);
+    }
+
+    boolean isGrayscale() {
+        return colorSpace == PDDeviceGray.INSTANCE;
+    }
+
+    /**
+     * 写回文档后图片数据占用的字节数
+     */
+    long size() {
+        return jpegData.length + (alphaData != null ? alphaData.length : 0);
+    }
+
+    PDImageXObject toXObject(PDDocument document) throws IOException {
+        PDImageXObject image = new PDImageXObject(document, new ByteArrayInputStream(jpegData),
+                COSName.DCT_DECODE, width, height, 8, colorSpace);
+        if (alphaData != null) {
+            PDImageXObject mask = new PDImageXObject(document, new ByteArrayInputStream(alphaData),
+                    COSName.FLATE_DECODE, width, height, 8, PDDeviceGray.INSTANCE);
+            image.getCOSObject().setItem(COSName.SMASK, mask);
+        }
+        return image;
+    }
+
+    private static byte[] writeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(outputStream)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(outputStream, deflater)) {
+            deflaterStream.write(data);
+        } finally {
+            deflater.end();
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,103 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * 识别实际上只有灰度的彩色图片（黑白扫描件、灰色图表等），转为单通道图片，
+ * 之后的缩放和 JPEG 编码都只处理一个通道，输出为 DeviceGray。
+ */
+final class Grayscale {
+    // 像素的 R、G、B 最大差值不超过该值时视为中性灰，容忍 JPEG 解码带来的色度噪声
+    static final int MAX_CHROMA = 10;
+    // 预检时最多抽样的像素数
+    private static final int SAMPLES = 16 * 1024;
+
+    private Grayscale() {
+    }
+
+    /**
+     * 图片是灰度时返回转换后的 TYPE_BYTE_GRAY 图片，否则返回 null。
+     * 先稀疏抽样快速排除彩色图片；抽样通过后在转换的同时逐像素检查，遇到彩色像素立即放弃，
+     * 因此不会把只有小块彩色（如红色印章）的图片误判为灰度。
+     */
+    static BufferedImage convertIfNeutral(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY || image.getColorModel().hasAlpha()) {
+            return null;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (!sampleIsNeutral(image, width, height)) {
+            return null;
+        }
+
+        BufferedImage gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] target = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        int[] packed = packedRgb(image);
+        int[] row = packed == null ? new int[width] : null;
+        for (int y = 0; y < height; y++) {
+            int[] pixels = packed;
+            int offset = y * width;
+            if (packed == null) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                pixels = row;
+                offset = 0;
+            }
+            int targetOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int rgb = pixels[offset + x];
+                if (!isNeutral(rgb)) {
+                    return null;
+                }
+                target[targetOffset + x] = (byte) luma(rgb);
+            }
+        }
+        return gray;
+    }
+
+    private static boolean sampleIsNeutral(BufferedImage image, int width, int height) {
+        long pixels = (long) width * height;
+        // 步长取奇数，减少步长恰好是宽度的倍数、只采到同一列的情况
+        long step = Math.max(1, pixels / SAMPLES) | 1;
+        for (long i = 0; i < pixels; i += step) {
+            if (!isNeutral(image.getRGB((int) (i % width), (int) (i / width)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * TYPE_INT_RGB 且没有偏移的图片直接返回像素数组，其他类型返回 null
+     */
+    private static int[] packedRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB
+                && image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel model
+                && model.getScanlineStride() == image.getWidth()
+                && image.getRaster().getDataBuffer().getOffset() == 0
+                && image.getRaster().getSampleModelTranslateX() == 0
+                && image.getRaster().getSampleModelTranslateY() == 0) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        return null;
+    }
+
+    private static boolean isNeutral(int rgb) {
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+        return Math.max(r, Math.max(g, b)) - Math.min(r, Math.min(g, b)) <= MAX_CHROMA;
+    }
+
+    /**
+     * ITU-R BT.601 亮度，定点计算
+     */
+    private static int luma(int rgb) {
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+        return (r * 77 + g * 150 + b * 29 + 128) >> 8;
+    }
+}
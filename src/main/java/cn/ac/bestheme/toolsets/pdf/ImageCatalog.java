@@ -0,0 +1,214 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个文档内的图片索引。
+ * 同一个图片流（或字节完全相同的图片流）被多个页面引用时只登记一次，
+ * 这样每张图片只解码、编码一次，压缩结果也只写入输出文件一次。
+ */
+final class ImageCatalog {
+    private final Map<COSStream, SourceImage> byStream = new IdentityHashMap<>();
+    private final Map<ContentKey, SourceImage> byContent = new HashMap<>();
+    private final List<SourceImage> images = new ArrayList<>();
+    private int references;
+
+    /**
+     * 登记资源字典中名为 name 的图片。图片流的原始字节只在身份查找未命中时才读取并计算摘要。
+     *
+     * @param pageSize 引用该图片的页面长边（点，1/72 英寸），用于计算分辨率上限
+     */
+    void add(PDResources resources, COSName name, PDImageXObject image, float pageSize) throws IOException {
+        references++;
+        COSStream stream = image.getCOSObject();
+        SourceImage source = byStream.get(stream);
+        if (source == null) {
+            ContentKey key = contentKey(image);
+            source = key != null ? byContent.get(key) : null;
+            if (source == null) {
+                source = new SourceImage(image);
+                images.add(source);
+                if (key != null) {
+                    byContent.put(key, source);
+                }
+            }
+            byStream.put(stream, source);
+        }
+        source.usages.add(new Usage(resources, name));
+        source.pageSize = Math.max(source.pageSize, pageSize);
+    }
+
+    List<SourceImage> images() {
+        return Collections.unmodifiableList(images);
+    }
+
+    /**
+     * 所有不重复图片（含蒙版）在原文件中占用的字节数
+     */
+    long encodedBytes() {
+        long total = 0;
+        for (SourceImage source : images) {
+            total += source.encodedLength();
+        }
+        return total;
+    }
+
+    /**
+     * 被引用的总次数（包括重复引用）
+     */
+    int references() {
+        return references;
+    }
+
+    /**
+     * 计算图片内容的去重键。带蒙版的图片解码结果还取决于蒙版对象，只按对象身份去重。
+     */
+    private static ContentKey contentKey(PDImageXObject image) throws IOException {
+        COSStream stream = image.getCOSObject();
+        if (stream.getDictionaryObject(COSName.SMASK) != null || stream.getDictionaryObject(COSName.MASK) != null) {
+            return null;
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        try (InputStream in = stream.createRawInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return new ContentKey(
+                HexFormat.of().formatHex(digest.digest()),
+                image.getWidth(),
+                image.getHeight(),
+                image.getBitsPerComponent(),
+                String.valueOf(stream.getFilters()),
+                String.valueOf(stream.getDictionaryObject(COSName.DECODE_PARMS, COSName.DP)),
+                String.valueOf(image.getDecode()),
+                colorSpaceKey(image));
+    }
+
+    private static Object colorSpaceKey(PDImageXObject image) {
+        PDColorSpace colorSpace = ImageDecision.colorSpace(image);
+        if (colorSpace instanceof PDDeviceGray || colorSpace instanceof PDDeviceRGB || colorSpace instanceof PDDeviceCMYK) {
+            return colorSpace.getName();
+        }
+        // 其他颜色空间可能引用 ICC 配置或查找表，只有同一个颜色空间对象才视为相同；
+        // 无法确定颜色空间时按 /ColorSpace 条目比较，内容相同且都没有该条目的图片视为相同
+        return new Identity(image.getCOSObject().getDictionaryObject(COSName.COLORSPACE, COSName.CS));
+    }
+
+    /**
+     * 文档中一个不重复的原始图片，以及引用它的所有位置
+     */
+    static final class SourceImage {
+        private final PDImageXObject image;
+        private final List<Usage> usages = new ArrayList<>();
+        // 引用该图片的最大页面的长边（点）
+        private float pageSize;
+
+        private SourceImage(PDImageXObject image) {
+            this.image = image;
+        }
+
+        PDImageXObject image() {
+            return image;
+        }
+
+        /**
+         * 图片（含蒙版）在原文件中占用的字节数
+         */
+        long encodedLength() {
+            COSStream stream = image.getCOSObject();
+            long length = stream.getLength();
+            if (stream.getDictionaryObject(COSName.SMASK) instanceof COSStream mask) {
+                length += mask.getLength();
+            }
+            return length;
+        }
+
+        /**
+         * 估算解码时的峰值内存：按分量数和位深展开的原始采样，加上 PDFBox 生成的每像素 4 字节的 BufferedImage，
+         * 有软蒙版时再加上蒙版的采样。按抽样倍数解码时只计算抽样后保留的行和列。只读取图片字典，不解码
+         */
+        long decodedBytes(int subsampling) {
+            long pixels = (long) SubsampledDecoder.subsampledSize(image.getWidth(), subsampling)
+                    * SubsampledDecoder.subsampledSize(image.getHeight(), subsampling);
+            PDColorSpace colorSpace = ImageDecision.colorSpace(image);
+            // JPX 等图片的颜色空间可能在解码后才确定
+            int components = colorSpace != null ? colorSpace.getNumberOfComponents() : 3;
+            int bits = image.getBitsPerComponent() > 0 ? image.getBitsPerComponent() : 8;
+            long bytes = (pixels * components * bits + 7) / 8 + pixels * 4;
+            if (image.getCOSObject().getDictionaryObject(COSName.SMASK) instanceof COSStream mask) {
+                bytes += (long) SubsampledDecoder.subsampledSize(mask.getInt(COSName.WIDTH), subsampling)
+                        * SubsampledDecoder.subsampledSize(mask.getInt(COSName.HEIGHT), subsampling);
+            }
+            return bytes;
+        }
+
+        /**
+         * 图片允许的最大边长：参数中的最大边长与“铺满最大页面时达到 maxDpi”所需像素数中的较小者
+         */
+        int maxDimension(ImageSettings settings, int maxDpi) {
+            if (maxDpi <= 0 || pageSize <= 0) {
+                return settings.maxDimension();
+            }
+            int pagePixels = (int) Math.ceil(pageSize / 72f * maxDpi);
+            return Math.min(settings.maxDimension(), pagePixels);
+        }
+
+        /**
+         * 把所有引用位置替换为同一个新图片对象
+         */
+        void replaceWith(PDImageXObject replacement) {
+            for (Usage usage : usages) {
+                usage.resources().put(usage.name(), replacement);
+            }
+        }
+    }
+
+    private record Usage(PDResources resources, COSName name) {
+    }
+
+    private record ContentKey(String digest, int width, int height, int bitsPerComponent,
+                              String filters, String decodeParms, String decode, Object colorSpace) {
+    }
+
+    private record Identity(COSBase object) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Identity other && object == other.object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+}
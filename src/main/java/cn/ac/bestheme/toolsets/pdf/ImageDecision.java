@@ -0,0 +1,118 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 解码前根据图片元数据（过滤器、每分量位数、像素数、每像素字节数）决定如何处理图片，
+ * 避免把解码、编码的开销花在重新压缩也得不到收益的图片上。
+ */
+final class ImageDecision {
+    // 像素数和占用字节数都低于下列值的小图（图标、装饰线条等）不处理
+    static final long MIN_PIXELS = 128 * 128;
+    static final long MIN_BYTES = 8 * 1024;
+    // 已是 JPEG/JPEG2000 且平均每个颜色分量不超过该字节数时，视为已充分压缩
+    static final double COMPRESSED_BYTES_PER_COMPONENT = 0.08;
+
+    enum Action {
+        // 保留原图
+        SKIP,
+        // 缩小后重新编码
+        DOWNSCALE,
+        // 保持尺寸重新编码
+        REENCODE
+    }
+
+    enum Rule {
+        STENCIL_MASK(Action.SKIP),
+        BILEVEL(Action.SKIP),
+        // 没有 /ColorSpace 且 PDFBox 无法从数据中得到颜色空间（如未能解析的 JPX）
+        UNKNOWN_COLOR_SPACE(Action.SKIP),
+        // 按配置保留的 CMYK 等四分量图片
+        CMYK_PRESERVED(Action.SKIP),
+        SMALL(Action.SKIP),
+        ALREADY_COMPRESSED(Action.SKIP),
+        // 编码后反而不比原图小，解码后才能判断
+        NO_GAIN(Action.SKIP),
+        OVERSIZED(Action.DOWNSCALE),
+        RECOMPRESS(Action.REENCODE);
+
+        private final Action action;
+
+        Rule(Action action) {
+            this.action = action;
+        }
+
+        Action action() {
+            return action;
+        }
+    }
+
+    private ImageDecision() {
+    }
+
+    /**
+     * @param encodedLength 图片（含蒙版）在原文件中占用的字节数
+     * @param maxDimension  图片允许的最大边长，已综合了参数和所在页面的分辨率上限
+     */
+    static Rule decide(PDImageXObject image, long encodedLength, int maxDimension,
+                       CompressionProfile.ColorHandling colorHandling) throws IOException {
+        // 模板蒙版只有形状信息，转成 JPEG 会变成不透明的图片
+        if (image.isStencil()) {
+            return Rule.STENCIL_MASK;
+        }
+
+        List<COSName> filters = image.getStream().getFilters();
+        if (image.getBitsPerComponent() == 1
+                || filters.contains(COSName.CCITTFAX_DECODE)
+                || filters.contains(COSName.JBIG2_DECODE)) {
+            return Rule.BILEVEL;
+        }
+
+        PDColorSpace colorSpace = colorSpace(image);
+        if (colorSpace == null) {
+            return Rule.UNKNOWN_COLOR_SPACE;
+        }
+
+        if (colorHandling == CompressionProfile.ColorHandling.PRESERVE_CMYK
+                && colorSpace.getNumberOfComponents() == 4) {
+            return Rule.CMYK_PRESERVED;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long pixels = (long) width * height;
+        if (pixels < MIN_PIXELS && encodedLength < MIN_BYTES) {
+            return Rule.SMALL;
+        }
+
+        boolean oversized = width > maxDimension || height > maxDimension;
+        if (oversized) {
+            return Rule.OVERSIZED;
+        }
+
+        if (filters.contains(COSName.DCT_DECODE) || filters.contains(COSName.JPX_DECODE)) {
+            int components = colorSpace.getNumberOfComponents();
+            double bytesPerComponent = (double) encodedLength / pixels / components;
+            if (bytesPerComponent <= COMPRESSED_BYTES_PER_COMPONENT) {
+                return Rule.ALREADY_COMPRESSED;
+            }
+        }
+        return Rule.RECOMPRESS;
+    }
+
+    /**
+     * 图片的颜色空间，无法确定时返回 null
+     */
+    static PDColorSpace colorSpace(PDImageXObject image) {
+        try {
+            return image.getColorSpace();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
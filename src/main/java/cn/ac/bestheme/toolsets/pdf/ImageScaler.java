@@ -0,0 +1,14 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 图片缩放算法。实现必须是线程安全的，同一个实例会在多个图片压缩线程中同时使用。
+ */
+public interface ImageScaler {
+
+    /**
+     * 把图片缩放到指定尺寸。结果为灰度、RGB 或带透明通道的 RGB 图片之一，与原图的颜色类型保持一致。
+     */
+    BufferedImage scale(BufferedImage source, int width, int height);
+}
@@ -0,0 +1,28 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import java.util.List;
+
+/**
+ * 图片重新编码时使用的 JPEG 质量和最大边长
+ */
+record ImageSettings(float quality, int maxDimension) {
+
+    static final ImageSettings DEFAULT = new ImageSettings(0.5f, 1000);
+
+    /**
+     * 按目标大小压缩时依次尝试的参数，从保真度最高到最低排列，输出大小随之单调递减
+     */
+    static final List<ImageSettings> LADDER = List.of(
+            new ImageSettings(0.85f, 2400),
+            new ImageSettings(0.8f, 2000),
+            new ImageSettings(0.75f, 1600),
+            new ImageSettings(0.7f, 1400),
+            new ImageSettings(0.6f, 1200),
+            DEFAULT,
+            new ImageSettings(0.45f, 900),
+            new ImageSettings(0.4f, 800),
+            new ImageSettings(0.35f, 700),
+            new ImageSettings(0.3f, 600),
+            new ImageSettings(0.25f, 500),
+            new ImageSettings(0.2f, 400));
+}
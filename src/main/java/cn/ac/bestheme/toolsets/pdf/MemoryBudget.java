@@ -0,0 +1,63 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import java.io.Closeable;
+
+/**
+ * 所有并发请求共享的 PDFBox 堆内存预算。
+ * 每个文档申请一份堆内存额度，总额不足时只分到剩余部分（可能为 0），超出额度的数据写入临时文件，
+ * 因此申请不会阻塞，所有文档占用的堆内存总和始终不超过总预算。
+ */
+final class MemoryBudget {
+    private final long total;
+    private long available;
+
+    MemoryBudget(long total) {
+        this.total = total;
+        this.available = total;
+    }
+
+    /**
+     * 申请最多 requested 字节的堆内存额度，使用完毕后必须关闭返回的租约
+     */
+    synchronized Lease acquire(long requested) {
+        long granted = Math.max(0, Math.min(requested, available));
+        available -= granted;
+        return new Lease(granted);
+    }
+
+    synchronized long available() {
+        return available;
+    }
+
+    long total() {
+        return total;
+    }
+
+    private synchronized void release(long bytes) {
+        available += bytes;
+    }
+
+    final class Lease implements Closeable {
+        private final long bytes;
+        private boolean released;
+
+        private Lease(long bytes) {
+            this.bytes = bytes;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(bytes);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import jakarta.ws.rs.core.StreamingOutput;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.multipart.FileUpload;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 批量压缩的响应体：并发压缩多个PDF，哪个先完成就先写入ZIP，客户端不必等待最慢的文件。
+ * 同时在压缩或等待写出的文档不超过 concurrency 个，因此内存占用与文件总数无关。
+ */
+class PdfBatchWriter implements StreamingOutput {
+    private static final Logger LOG = Logger.getLogger(PdfBatchWriter.class);
+
+    private final PdfService pdfService;
+    private final List<FileUpload> files;
+    private final CompressionOptions options;
+    private final int concurrency;
+
+    PdfBatchWriter(PdfService pdfService, List<FileUpload> files, CompressionOptions options, int concurrency) {
+        this.pdfService = pdfService;
+        this.files = files;
+        this.options = options;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<Future<BatchEntry>> outstanding = new ArrayList<>();
+        ZipOutputStream zip = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+        // PDF中的图片和内容流已经压缩过，ZIP只做最快的压缩
+        zip.setLevel(Deflater.BEST_SPEED);
+
+        // 每个文件的压缩在虚拟线程中等待图片线程池，协调本身不占用平台线程
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<BatchEntry> completion = new ExecutorCompletionService<>(executor);
+            Set<String> entryNames = new HashSet<>();
+            int next = 0;
+            try {
+                for (; next < Math.min(concurrency, files.size()); next++) {
+                    outstanding.add(submit(completion, files.get(next), aborted));
+                }
+                for (int written = 0; written < files.size(); written++) {
+                    Future<BatchEntry> future = completion.take();
+                    outstanding.remove(future);
+                    writeEntry(zip, future.get(), entryNames);
+                    if (next < files.size()) {
+                        outstanding.add(submit(completion, files.get(next++), aborted));
+                    }
+                }
+                zip.finish();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("批量压缩被中断");
+            } catch (ExecutionException e) {
+                throw new IOException("批量压缩失败", e.getCause());
+            } finally {
+                aborted.set(true);
+            }
+        } finally {
+            // 执行器关闭时已等待所有任务结束，释放客户端断开等情况下未写出的文档
+            for (Future<BatchEntry> future : outstanding) {
+                closeQuietly(future);
+            }
+        }
+    }
+
+    private Future<BatchEntry> submit(CompletionService<BatchEntry> completion, FileUpload file, AtomicBoolean aborted) {
+        return completion.submit(() -> {
+            String fileName = PdfResource.getCompressedFileName(PdfResource.getOriginalFileName(file));
+            if (aborted.get()) {
+                return new BatchEntry(fileName, null, "已取消");
+            }
+            try (InputStream inputStream = Files.newInputStream(file.uploadedFile())) {
+                return new BatchEntry(fileName, pdfService.compressWhenAdmitted(inputStream, options), null);
+            } catch (Exception e) {
+                LOG.error("批量压缩中的文件压缩失败: " + file.fileName(), e);
+                return new BatchEntry(fileName, null, "PDF压缩失败: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 把一个文件的结果写入ZIP：成功时直接把文档序列化到ZIP条目中，失败时写入同名的错误说明
+     */
+    private void writeEntry(ZipOutputStream zip, BatchEntry entry, Set<String> entryNames) throws IOException {
+        if (entry.compressedPdf() == null) {
+            zip.putNextEntry(new ZipEntry(uniqueName(entry.fileName() + ".error.txt", entryNames)));
+            zip.write(entry.error().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            return;
+        }
+
+        try (CompressedPdf compressedPdf = entry.compressedPdf()) {
+            zip.putNextEntry(new ZipEntry(uniqueName(entry.fileName(), entryNames)));
+            compressedPdf.writeTo(new NonClosingOutputStream(zip));
+            zip.closeEntry();
+        }
+        LOG.info("批量压缩已写出: " + entry.fileName());
+    }
+
+    /**
+     * 同名文件依次加上 (2)、(3) 等后缀
+     */
+    private static String uniqueName(String fileName, Set<String> entryNames) {
+        String name = fileName;
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+        String extension = dot > 0 ? fileName.substring(dot) : "";
+        for (int i = 2; !entryNames.add(name); i++) {
+            name = base + " (" + i + ")" + extension;
+        }
+        return name;
+    }
+
+    private static void closeQuietly(Future<BatchEntry> future) {
+        try {
+            BatchEntry entry = future.get();
+            if (entry.compressedPdf() != null) {
+                entry.compressedPdf().close();
+            }
+        } catch (Exception e) {
+            LOG.debug("释放未写出的批量压缩结果失败", e);
+        }
+    }
+
+    private record BatchEntry(String fileName, CompressedPdf compressedPdf, String error) {
+    }
+
+    /**
+     * PDDocument.save 结束时会关闭输出流，写入ZIP条目时需要保持ZIP流打开
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * 异步压缩任务。状态由工作线程更新、由请求线程读取，字段均为 volatile。
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PdfJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+    private final String fileName;
+    private final Instant createdAt;
+    private final Path inputFile;
+    private final Path resultFile;
+    private final CompressionOptions options;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant finishedAt;
+    private volatile Instant expiresAt;
+    private volatile Long resultSize;
+    private volatile String error;
+    private volatile CompressionStats stats;
+
+    PdfJob(String id, String fileName, Path inputFile, Path resultFile, CompressionOptions options) {
+        this.id = id;
+        this.fileName = fileName;
+        this.inputFile = inputFile;
+        this.resultFile = resultFile;
+        this.options = options;
+        this.createdAt = Instant.now();
+    }
+
+    @JsonProperty("id")
+    public String getId() {
+        return id;
+    }
+
+    @JsonProperty("file_name")
+    public String getFileName() {
+        return fileName;
+    }
+
+    @JsonProperty("status")
+    public Status getStatus() {
+        return status;
+    }
+
+    @JsonProperty("created_at")
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    @JsonProperty("finished_at")
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    @JsonProperty("expires_at")
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    @JsonProperty("result_size")
+    public Long getResultSize() {
+        return resultSize;
+    }
+
+    @JsonProperty("stats")
+    public CompressionStats getStats() {
+        return stats;
+    }
+
+    @JsonProperty("error")
+    public String getError() {
+        return error;
+    }
+
+    @JsonIgnore
+    Path getInputFile() {
+        return inputFile;
+    }
+
+    @JsonIgnore
+    Path getResultFile() {
+        return resultFile;
+    }
+
+    @JsonIgnore
+    CompressionOptions getOptions() {
+        return options;
+    }
+
+    @JsonIgnore
+    boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    void markRunning() {
+        status = Status.RUNNING;
+    }
+
+    void markSucceeded(long resultSize, CompressionStats stats, Instant expiresAt) {
+        this.resultSize = resultSize;
+        this.stats = stats;
+        finish(Status.SUCCEEDED, expiresAt);
+    }
+
+    void markFailed(String error, Instant expiresAt) {
+        this.error = error;
+        finish(Status.FAILED, expiresAt);
+    }
+
+    private void finish(Status status, Instant expiresAt) {
+        this.finishedAt = Instant.now();
+        this.expiresAt = expiresAt;
+        this.status = status;
+    }
+}
@@ -0,0 +1,117 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import jakarta.ws.rs.core.Context;
+import org.jboss.logging.Logger;
+
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 异步压缩接口：提交文件后立即返回任务ID，之后轮询任务状态并下载结果
+ */
+@Path("/api/pdf/jobs")
+public class PdfJobResource {
+    private static final Logger LOG = Logger.getLogger(PdfJobResource.class);
+    // 队列已满时建议客户端重试的等待秒数
+    private static final int RETRY_AFTER_SECONDS = 30;
+
+    @Inject
+    PdfJobService jobService;
+
+    @POST
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response submit(PdfResource.PdfUpload upload, @Context UriInfo uriInfo) {
+        try {
+            if (upload == null || upload.file == null) {
+                LOG.error("没有收到文件");
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("没有收到文件")
+                        .build();
+            }
+
+            String fileName = PdfResource.getCompressedFileName(PdfResource.getOriginalFileName(upload.file));
+            PdfJob job = jobService.submit(upload.file.uploadedFile(), fileName, upload.toOptions());
+            return Response.accepted(job)
+                    .location(uriInfo.getAbsolutePathBuilder().path(job.getId()).build())
+                    .build();
+        } catch (IllegalArgumentException e) {
+            LOG.error("请求参数错误", e);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity(e.getMessage())
+                    .build();
+        } catch (RejectedExecutionException e) {
+            LOG.warn("压缩任务队列已满");
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", RETRY_AFTER_SECONDS)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("压缩任务队列已满，请稍后重试")
+                    .build();
+        } catch (Exception e) {
+            LOG.error("提交压缩任务失败", e);
+            return Response.serverError()
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("提交压缩任务失败: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    @GET
+    @Path("/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response status(@PathParam("id") String id) {
+        Optional<PdfJob> job = jobService.find(id);
+        if (job.isEmpty()) {
+            return notFound(id);
+        }
+        return Response.ok(job.get()).build();
+    }
+
+    @GET
+    @Path("/{id}/result")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response result(@PathParam("id") String id) {
+        Optional<PdfJob> found = jobService.find(id);
+        if (found.isEmpty()) {
+            return notFound(id);
+        }
+
+        PdfJob job = found.get();
+        if (job.getStatus() == PdfJob.Status.FAILED) {
+            return Response.status(Response.Status.GONE)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("PDF压缩失败: " + job.getError())
+                    .build();
+        }
+        if (job.getStatus() != PdfJob.Status.SUCCEEDED) {
+            return Response.status(Response.Status.CONFLICT)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("压缩任务尚未完成: " + job.getStatus())
+                    .build();
+        }
+
+        return Response.ok(job.getResultFile().toFile())
+                .header("Content-Disposition", PdfResource.contentDisposition(job.getFileName()))
+                .type(MediaType.APPLICATION_OCTET_STREAM)
+                .build();
+    }
+
+    private Response notFound(String id) {
+        return Response.status(Response.Status.NOT_FOUND)
+                .type(MediaType.TEXT_PLAIN)
+                .entity("压缩任务不存在或已过期: " + id)
+                .build();
+    }
+}
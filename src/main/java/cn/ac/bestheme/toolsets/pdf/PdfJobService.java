@@ -0,0 +1,170 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步压缩任务：提交后立即返回任务ID，由独立的工作线程池执行压缩，结果保存为临时文件，过期后自动删除。
+ * 线程池和等待队列都有上限，队列满时拒绝新任务，而不是无限堆积上传文件。
+ */
+@ApplicationScoped
+public class PdfJobService {
+    private static final Logger LOG = Logger.getLogger(PdfJobService.class);
+
+    @Inject
+    PdfService pdfService;
+
+    // 同时执行的压缩任务数
+    @ConfigProperty(name = "pdf.jobs.workers", defaultValue = "2")
+    int workers;
+
+    // 等待执行的任务数上限
+    @ConfigProperty(name = "pdf.jobs.queue-capacity", defaultValue = "20")
+    int queueCapacity;
+
+    // 任务结束后结果保留的时间
+    @ConfigProperty(name = "pdf.jobs.result-ttl", defaultValue = "30m")
+    Duration resultTtl;
+
+    // 任务文件目录，未配置时在系统临时目录下创建
+    @ConfigProperty(name = "pdf.jobs.directory")
+    Optional<String> directory;
+
+    private final Map<String, PdfJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+    private Path jobDirectory;
+
+    @PostConstruct
+    void init() {
+        try {
+            jobDirectory = directory.isPresent()
+                    ? Files.createDirectories(Path.of(directory.get()))
+                    : Files.createTempDirectory("pdf-jobs");
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法创建任务文件目录", e);
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pdf-job-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        LOG.info("压缩任务目录: " + jobDirectory + "，工作线程数: " + workers + "，队列上限: " + queueCapacity);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        for (PdfJob job : jobs.values()) {
+            deleteFiles(job);
+        }
+    }
+
+    /**
+     * 提交压缩任务。上传的文件会先复制到任务目录，请求结束后被删除也不影响任务执行。
+     *
+     * @throws RejectedExecutionException 等待队列已满
+     */
+    public PdfJob submit(Path uploadedFile, String fileName, CompressionOptions options) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path inputFile = jobDirectory.resolve(id + ".in.pdf");
+        Files.copy(uploadedFile, inputFile);
+
+        PdfJob job = new PdfJob(id, fileName, inputFile, jobDirectory.resolve(id + ".pdf"), options);
+        jobs.put(id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            deleteFiles(job);
+            throw e;
+        }
+        LOG.info("已提交压缩任务 " + id + ": " + fileName);
+        return job;
+    }
+
+    public Optional<PdfJob> find(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    private void run(PdfJob job) {
+        job.markRunning();
+        try {
+            CompressionStats stats;
+            try (InputStream inputStream = Files.newInputStream(job.getInputFile());
+                 CompressedPdf compressedPdf = pdfService.compressWhenAdmitted(inputStream, job.getOptions());
+                 OutputStream outputStream = Files.newOutputStream(job.getResultFile())) {
+                compressedPdf.writeTo(outputStream);
+                stats = compressedPdf.getStats();
+            }
+            job.markSucceeded(Files.size(job.getResultFile()), stats, Instant.now().plus(resultTtl));
+            LOG.info("压缩任务完成 " + job.getId());
+        } catch (Exception e) {
+            try {
+                Files.deleteIfExists(job.getResultFile());
+            } catch (IOException deleteError) {
+                e.addSuppressed(deleteError);
+            }
+            LOG.error("压缩任务失败 " + job.getId(), e);
+            job.markFailed(e.getMessage(), Instant.now().plus(resultTtl));
+        } finally {
+            try {
+                Files.deleteIfExists(job.getInputFile());
+            } catch (IOException e) {
+                LOG.warn("删除任务输入文件失败: " + job.getInputFile(), e);
+            }
+        }
+    }
+
+    /**
+     * 清理已过期的任务和结果文件
+     */
+    @Scheduled(every = "1m", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void removeExpired() {
+        Instant now = Instant.now();
+        jobs.values().removeIf(job -> {
+            if (job.isFinished() && job.getExpiresAt().isBefore(now)) {
+                deleteFiles(job);
+                LOG.info("压缩任务已过期 " + job.getId());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void deleteFiles(PdfJob job) {
+        try {
+            Files.deleteIfExists(job.getInputFile());
+            Files.deleteIfExists(job.getResultFile());
+        } catch (IOException e) {
+            LOG.warn("删除任务文件失败: " + job.getId(), e);
+        }
+    }
+}
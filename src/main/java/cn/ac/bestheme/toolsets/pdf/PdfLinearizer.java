@@ -0,0 +1,746 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 把文档写成线性化（“快速网页查看”）的PDF（ISO 32000-1 附录 F）：
+ * 文件开头是线性化参数字典和第一页的交叉引用表，随后是目录等打开文档时需要的对象、提示流和第一页用到的全部对象，
+ * 浏览器读到第一页末尾（参数字典中的 /E）即可显示第一页；其余页面按页排列，页面共用的对象放在所有页面之后，
+ * 提示流中的页面偏移表和共享对象表让阅读器可以按字节范围直接请求任意一页。
+ *
+ * <p>输入必须是从PDF文件加载的文档：解析得到的文档中，间接对象都是 {@link COSObject}，其余对象都是直接对象，
+ * 据此原样保留对象的直接、间接关系。对象重新编号，第一页部分使用最大的一组对象号。
+ * 对象先按最终顺序写入临时文件，再与文件头、提示流和交叉引用表拼接到输出流，不在堆中保留整个文件。
+ */
+final class PdfLinearizer {
+    // 线性化参数字典和第一页文件尾中的数字按固定宽度书写，使文件头的长度与数值无关
+    private static final int NUMBER_WIDTH = 10;
+    // 打开文档时就需要的目录项（附录 F.3.3 第 4 部分）
+    private static final List<COSName> OPEN_DOCUMENT_KEYS = List.of(COSName.getPDFName("ViewerPreferences"),
+            COSName.PAGE_MODE, COSName.THREADS, COSName.OPEN_ACTION, COSName.ACRO_FORM);
+    // 从页面出发收集对象时不跟随的键：指回页面树、所属页面、文章线索
+    private static final Set<COSName> PAGE_BACK_REFERENCES = Set.of(COSName.PARENT, COSName.P, COSName.B);
+    private static final List<COSName> INHERITABLE = List.of(COSName.RESOURCES, COSName.MEDIA_BOX,
+            COSName.CROP_BOX, COSName.ROTATE);
+
+    private final PDDocument document;
+    private final List<COSDictionary> pages = new ArrayList<>();
+    // 间接对象 → 新的对象号
+    private final Map<COSBase, Integer> numbers = new IdentityHashMap<>();
+    // 原文件没有 /ID 时使用的文件标识
+    private final String generatedId = UUID.randomUUID().toString().replace("-", "");
+
+    private PdfLinearizer(PDDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * 把从文件加载的文档线性化后写入 outputStream，临时文件放在 tempDirectory（为 null 时使用系统临时目录）
+     */
+    static void write(PDDocument document, Path tempDirectory, OutputStream outputStream) throws IOException {
+        new PdfLinearizer(document).write(tempDirectory, outputStream);
+    }
+
+    private void write(Path tempDirectory, OutputStream outputStream) throws IOException {
+        for (PDPage page : document.getPages()) {
+            pages.add(page.getCOSObject());
+        }
+        if (pages.isEmpty()) {
+            throw new IOException("文档没有页面，无法线性化");
+        }
+        pushDownInheritedAttributes();
+        Layout layout = partition();
+
+        Path temp = tempDirectory != null
+                ? Files.createTempFile(tempDirectory, "linearize", ".tmp")
+                : Files.createTempFile("linearize", ".tmp");
+        try {
+            Body body = writeBody(layout, temp);
+            assemble(layout, body, temp, outputStream);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // ---------------------------------------------------------------- 对象分组
+
+    /**
+     * 第一页部分和其余页面都只跟随页面自身的对象，可继承的属性必须直接写在页面上，
+     * 否则阅读器要先加载页面树节点才能显示页面
+     */
+    private void pushDownInheritedAttributes() {
+        for (COSDictionary page : pages) {
+            for (COSName key : INHERITABLE) {
+                if (page.containsKey(key)) {
+                    continue;
+                }
+                for (COSDictionary node = parentOf(page); node != null; node = parentOf(node)) {
+                    COSBase value = node.getItem(key);
+                    if (value != null) {
+                        page.setItem(key, value);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static COSDictionary parentOf(COSDictionary node) {
+        return node.getDictionaryObject(COSName.PARENT) instanceof COSDictionary parent ? parent : null;
+    }
+
+    /**
+     * 按附录 F.3 的顺序分组：第 4 部分（目录和打开文档需要的对象）、第 6 部分（第一页用到的全部对象，页面对象在最前）、
+     * 第 7 部分（其余各页独用的对象）、第 8 部分（被多个页面共用的对象）、第 9 部分（页面树、文档信息等其他对象）
+     */
+    private Layout partition() {
+        Layout layout = new Layout();
+        Set<COSBase> assigned = identitySet();
+        COSDictionary catalog = document.getDocumentCatalog().getCOSObject();
+
+        layout.part4.add(catalog);
+        assigned.add(catalog);
+        for (COSName key : OPEN_DOCUMENT_KEYS) {
+            for (COSBase object : collect(catalog.getItem(key), true)) {
+                if (assigned.add(object)) {
+                    layout.part4.add(object);
+                }
+            }
+        }
+
+        List<List<COSBase>> users = new ArrayList<>(pages.size());
+        Map<COSBase, Integer> pageCounts = new IdentityHashMap<>();
+        for (COSDictionary page : pages) {
+            List<COSBase> objects = new ArrayList<>();
+            objects.add(page);
+            objects.addAll(collect(page, true));
+            users.add(objects);
+            for (COSBase object : objects) {
+                pageCounts.merge(object, 1, Integer::sum);
+            }
+        }
+        layout.users = users;
+        layout.pageCounts = pageCounts;
+
+        for (COSBase object : users.get(0)) {
+            if (assigned.add(object)) {
+                layout.part6.add(object);
+            }
+        }
+        for (int i = 1; i < pages.size(); i++) {
+            List<COSBase> part = new ArrayList<>();
+            for (COSBase object : users.get(i)) {
+                if (pageCounts.get(object) == 1 && assigned.add(object)) {
+                    part.add(object);
+                }
+            }
+            layout.part7.add(part);
+        }
+        for (int i = 1; i < pages.size(); i++) {
+            for (COSBase object : users.get(i)) {
+                if (assigned.add(object)) {
+                    layout.part8.add(object);
+                }
+            }
+        }
+        for (COSBase object : collect(document.getDocument().getTrailer(), false)) {
+            if (assigned.add(object)) {
+                layout.part9.add(object);
+            }
+        }
+
+        // 主交叉引用表中的对象编号为 1..k，第一页部分（参数字典、第 4、6 部分、提示流）编号为 k+1..n
+        int number = 1;
+        for (List<COSBase> part : layout.part7) {
+            for (COSBase object : part) {
+                numbers.put(object, number++);
+            }
+        }
+        for (COSBase object : layout.part8) {
+            numbers.put(object, number++);
+        }
+        for (COSBase object : layout.part9) {
+            numbers.put(object, number++);
+        }
+        layout.linearizationNumber = number++;
+        for (COSBase object : layout.part4) {
+            numbers.put(object, number++);
+        }
+        for (COSBase object : layout.part6) {
+            numbers.put(object, number++);
+        }
+        layout.hintNumber = number++;
+        layout.size = number;
+        return layout;
+    }
+
+    /**
+     * 收集从 root 出发可以到达的间接对象（不含 root 本身），按首次遇到的顺序排列。
+     * restricted 为 true 时不跟随指回页面树或所属页面的键，也不进入其他页面，只收集真正属于该页面或目录项的对象
+     */
+    private static List<COSBase> collect(COSBase root, boolean restricted) {
+        List<COSBase> found = new ArrayList<>();
+        if (root == null) {
+            return found;
+        }
+        COSBase start = root instanceof COSObject object ? object.getObject() : root;
+        if (start == null) {
+            return found;
+        }
+        if (root instanceof COSObject) {
+            if (restricted && isPageNode(start)) {
+                return found;
+            }
+            found.add(start);
+        }
+        Set<COSBase> seen = identitySet();
+        Deque<COSBase> pending = new ArrayDeque<>();
+        seen.add(start);
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            scan(pending.pop(), restricted, seen, found, pending);
+        }
+        return found;
+    }
+
+    private static void scan(COSBase value, boolean restricted, Set<COSBase> seen, List<COSBase> found,
+                             Deque<COSBase> pending) {
+        if (value instanceof COSDictionary dictionary) {
+            for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+                COSName key = entry.getKey();
+                if ((restricted && PAGE_BACK_REFERENCES.contains(key))
+                        || (dictionary instanceof COSStream && COSName.LENGTH.equals(key))) {
+                    continue;
+                }
+                visit(entry.getValue(), restricted, seen, found, pending);
+            }
+        } else if (value instanceof COSArray array) {
+            for (int i = 0; i < array.size(); i++) {
+                visit(array.get(i), restricted, seen, found, pending);
+            }
+        }
+    }
+
+    private static void visit(COSBase value, boolean restricted, Set<COSBase> seen, List<COSBase> found,
+                              Deque<COSBase> pending) {
+        if (value instanceof COSObject reference) {
+            COSBase target = reference.getObject();
+            if (target == null || (restricted && isPageNode(target)) || !seen.add(target)) {
+                return;
+            }
+            found.add(target);
+            pending.push(target);
+        } else {
+            // 直接对象不会形成环，直接展开
+            scan(value, restricted, seen, found, pending);
+        }
+    }
+
+    private static boolean isPageNode(COSBase object) {
+        return object instanceof COSDictionary dictionary
+                && (COSName.PAGE.equals(dictionary.getCOSName(COSName.TYPE))
+                || COSName.PAGES.equals(dictionary.getCOSName(COSName.TYPE)));
+    }
+
+    private static Set<COSBase> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // ---------------------------------------------------------------- 写出对象
+
+    /**
+     * 按文件中的顺序（第 4、6、7、8、9 部分）把对象写入临时文件，记录每个对象的相对偏移和长度
+     */
+    private Body writeBody(Layout layout, Path temp) throws IOException {
+        Body body = new Body();
+        try (CountingOutputStream outputStream = new CountingOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            for (COSBase object : layout.part4) {
+                writeObject(object, outputStream, body);
+            }
+            body.part4End = outputStream.count;
+            for (COSBase object : layout.part6) {
+                writeObject(object, outputStream, body);
+            }
+            body.part6End = outputStream.count;
+            for (List<COSBase> part : layout.part7) {
+                for (COSBase object : part) {
+                    writeObject(object, outputStream, body);
+                }
+            }
+            for (COSBase object : layout.part8) {
+                writeObject(object, outputStream, body);
+            }
+            for (COSBase object : layout.part9) {
+                writeObject(object, outputStream, body);
+            }
+            body.length = outputStream.count;
+        }
+        return body;
+    }
+
+    private void writeObject(COSBase object, CountingOutputStream outputStream, Body body) throws IOException {
+        long start = outputStream.count;
+        body.offsets.put(object, start);
+        ascii(outputStream, numbers.get(object) + " 0 obj\n");
+        if (object instanceof COSStream stream) {
+            writeStream(stream, outputStream);
+        } else {
+            writeValue(object, outputStream);
+        }
+        ascii(outputStream, "\nendobj\n");
+        body.lengths.put(object, outputStream.count - start);
+    }
+
+    /**
+     * 数据原样复制。解析时 PDFBox 已按实际读到的字节数设置 /Length，这里写成直接对象
+     */
+    private void writeStream(COSStream stream, OutputStream outputStream) throws IOException {
+        long length = stream.getLength();
+        ascii(outputStream, "<<");
+        for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+            if (!COSName.LENGTH.equals(entry.getKey())) {
+                entry.getKey().writePDF(outputStream);
+                outputStream.write(' ');
+                writeValue(entry.getValue(), outputStream);
+                outputStream.write(' ');
+            }
+        }
+        ascii(outputStream, "/Length " + length + ">>\nstream\n");
+        long copied;
+        try (InputStream data = stream.createRawInputStream()) {
+            copied = data.transferTo(outputStream);
+        }
+        if (copied != length) {
+            throw new IOException("数据流长度与 /Length 不一致: " + copied + " / " + length);
+        }
+        ascii(outputStream, "\nendstream");
+    }
+
+    private void writeValue(COSBase value, OutputStream outputStream) throws IOException {
+        if (value instanceof COSObject reference) {
+            Integer number = reference.getObject() != null ? numbers.get(reference.getObject()) : null;
+            ascii(outputStream, number != null ? number + " 0 R" : "null");
+        } else if (value instanceof COSStream stream) {
+            // 解析得到的流总是间接对象
+            Integer number = numbers.get(stream);
+            ascii(outputStream, number != null ? number + " 0 R" : "null");
+        } else if (value instanceof COSDictionary dictionary) {
+            ascii(outputStream, "<<");
+            for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+                entry.getKey().writePDF(outputStream);
+                outputStream.write(' ');
+                writeValue(entry.getValue(), outputStream);
+                outputStream.write(' ');
+            }
+            ascii(outputStream, ">>");
+        } else if (value instanceof COSArray array) {
+            outputStream.write('[');
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0) {
+                    outputStream.write(' ');
+                }
+                writeValue(array.get(i), outputStream);
+            }
+            outputStream.write(']');
+        } else if (value instanceof COSString string) {
+            COSWriter.writeString(string, outputStream);
+        } else if (value instanceof COSName name) {
+            name.writePDF(outputStream);
+        } else if (value instanceof COSInteger integer) {
+            integer.writePDF(outputStream);
+        } else if (value instanceof COSFloat number) {
+            number.writePDF(outputStream);
+        } else if (value instanceof COSBoolean bool) {
+            bool.writePDF(outputStream);
+        } else {
+            COSNull.NULL.writePDF(outputStream);
+        }
+    }
+
+    // ---------------------------------------------------------------- 组装文件
+
+    private void assemble(Layout layout, Body body, Path temp, OutputStream outputStream) throws IOException {
+        String header = "%PDF-" + String.format(Locale.ROOT, "%.1f", document.getVersion()) + "\n";
+        byte[] binaryComment = {'%', (byte) 0xE2, (byte) 0xE3, (byte) 0xCF, (byte) 0xD3, '\n'};
+        int firstPageObjects = layout.part4.size() + layout.part6.size() + 2;
+
+        // 文件头各部分的长度与数值无关，先用 0 占位计算
+        long firstPageXrefOffset = header.length() + binaryComment.length
+                + linearizationDictionary(layout, 0, 0, 0, 0, 0).length;
+        long headLength = firstPageXrefOffset + firstPageXref(layout, new long[firstPageObjects], 0).length;
+
+        // 提示表中的偏移按“没有提示流”计算（附录 F.4），即临时文件中的偏移加上文件头长度
+        byte[] hintObject = hintStream(layout, hintTables(layout, body, headLength));
+
+        long hintOffset = headLength + body.part4End;
+        long shift = hintObject.length;
+        long mainXrefOffset = headLength + shift + body.length;
+        long endOfFirstPage = headLength + shift + body.part6End;
+        byte[] mainXref = mainXref(layout, body, headLength, body.part4End, shift, firstPageXrefOffset);
+        long fileLength = mainXrefOffset + mainXref.length;
+        // /T 是主交叉引用表第一个条目之前的空白字符的偏移
+        long firstEntry = mainXrefOffset + ("xref\n0 " + layout.linearizationNumber).length();
+
+        long[] firstPageOffsets = new long[firstPageObjects];
+        int index = 0;
+        firstPageOffsets[index++] = header.length() + binaryComment.length;
+        for (COSBase object : layout.part4) {
+            firstPageOffsets[index++] = headLength + body.offsets.get(object);
+        }
+        for (COSBase object : layout.part6) {
+            firstPageOffsets[index++] = headLength + shift + body.offsets.get(object);
+        }
+        firstPageOffsets[index] = hintOffset;
+
+        outputStream.write(header.getBytes(StandardCharsets.US_ASCII));
+        outputStream.write(binaryComment);
+        outputStream.write(linearizationDictionary(layout, fileLength, hintOffset, hintObject.length,
+                endOfFirstPage, firstEntry));
+        outputStream.write(firstPageXref(layout, firstPageOffsets, mainXrefOffset));
+        try (InputStream inputStream = Files.newInputStream(temp)) {
+            copyExactly(inputStream, outputStream, body.part4End);
+            outputStream.write(hintObject);
+            inputStream.transferTo(outputStream);
+        }
+        outputStream.write(mainXref);
+    }
+
+    private byte[] linearizationDictionary(Layout layout, long fileLength, long hintOffset, long hintLength,
+                                           long endOfFirstPage, long mainXrefEntry) {
+        int firstPage = numbers.get(pages.get(0));
+        String dictionary = layout.linearizationNumber + " 0 obj\n<< /Linearized 1 /L " + pad(fileLength)
+                + " /H [ " + pad(hintOffset) + " " + pad(hintLength) + " ] /O " + firstPage
+                + " /E " + pad(endOfFirstPage) + " /N " + pages.size() + " /T " + pad(mainXrefEntry)
+                + " >>\nendobj\n";
+        return dictionary.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] firstPageXref(Layout layout, long[] offsets, long mainXrefOffset) throws IOException {
+        ByteArrayOutputStream xref = new ByteArrayOutputStream();
+        ascii(xref, "xref\n" + layout.linearizationNumber + " " + offsets.length + "\n");
+        for (long offset : offsets) {
+            ascii(xref, String.format(Locale.ROOT, "%010d 00000 n\r\n", offset));
+        }
+        ascii(xref, "trailer\n<< /Size " + layout.size);
+        COSDictionary trailer = document.getDocument().getTrailer();
+        ascii(xref, " /Root " + numbers.get(document.getDocumentCatalog().getCOSObject()) + " 0 R");
+        if (trailer.getDictionaryObject(COSName.INFO) instanceof COSDictionary info && numbers.containsKey(info)) {
+            ascii(xref, " /Info " + numbers.get(info) + " 0 R");
+        }
+        ascii(xref, " /ID ");
+        if (trailer.getDictionaryObject(COSName.ID) instanceof COSArray id && id.size() == 2) {
+            writeValue(id, xref);
+        } else {
+            ascii(xref, "[<" + generatedId + "><" + generatedId + ">]");
+        }
+        ascii(xref, " /Prev " + pad(mainXrefOffset) + " >>\nstartxref\n0\n%%EOF\n");
+        return xref.toByteArray();
+    }
+
+    /**
+     * 主交叉引用表和文件尾，文件末尾的 startxref 指向文件开头第一页的交叉引用表
+     */
+    private byte[] mainXref(Layout layout, Body body, long headLength, long part4End, long shift,
+                            long firstPageXrefOffset) throws IOException {
+        ByteArrayOutputStream xref = new ByteArrayOutputStream();
+        ascii(xref, "xref\n0 " + layout.linearizationNumber + "\n0000000000 65535 f\r\n");
+        COSBase[] byNumber = new COSBase[layout.linearizationNumber];
+        for (Map.Entry<COSBase, Integer> entry : numbers.entrySet()) {
+            if (entry.getValue() < layout.linearizationNumber) {
+                byNumber[entry.getValue()] = entry.getKey();
+            }
+        }
+        for (int number = 1; number < byNumber.length; number++) {
+            long relative = body.offsets.get(byNumber[number]);
+            long offset = headLength + relative + (relative >= part4End ? shift : 0);
+            ascii(xref, String.format(Locale.ROOT, "%010d 00000 n\r\n", offset));
+        }
+        ascii(xref, "trailer\n<< /Size " + layout.linearizationNumber + " >>\nstartxref\n" + firstPageXrefOffset
+                + "\n%%EOF\n");
+        return xref.toByteArray();
+    }
+
+    private byte[] hintStream(Layout layout, HintData hintData) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ascii(stream, layout.hintNumber + " 0 obj\n<< /Length " + hintData.bytes().length
+                + " /S " + hintData.sharedOffset() + " >>\nstream\n");
+        stream.write(hintData.bytes());
+        ascii(stream, "\nendstream\nendobj\n");
+        return stream.toByteArray();
+    }
+
+    // ---------------------------------------------------------------- 提示表
+
+    /**
+     * 生成页面偏移提示表和共享对象提示表（附录 F.4.1、F.4.2）。
+     * 与 Acrobat 的实现一致，每一项按所有页面依次排列，每项从字节边界开始；
+     * 内容流的偏移和长度按整个页面计算，共享对象引用不写位置分数，每个共享对象组只含一个对象且不带签名。
+     */
+    private HintData hintTables(Layout layout, Body body, long headLength) {
+        List<COSBase> shared = new ArrayList<>(layout.part6);
+        shared.addAll(layout.part8);
+        Map<COSBase, Integer> sharedIndex = new IdentityHashMap<>();
+        for (int i = 0; i < shared.size(); i++) {
+            sharedIndex.put(shared.get(i), i);
+        }
+
+        int pageCount = pages.size();
+        long[] objectCounts = new long[pageCount];
+        long[] pageLengths = new long[pageCount];
+        List<List<Integer>> sharedReferences = new ArrayList<>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            List<COSBase> own = i == 0 ? layout.part6 : layout.part7.get(i - 1);
+            objectCounts[i] = own.size();
+            for (COSBase object : own) {
+                pageLengths[i] += body.lengths.get(object);
+            }
+            List<Integer> references = new ArrayList<>();
+            for (COSBase object : layout.users.get(i)) {
+                Integer index = sharedIndex.get(object);
+                if (index != null && layout.pageCounts.get(object) > 1) {
+                    references.add(index);
+                }
+            }
+            sharedReferences.add(references);
+        }
+
+        BitWriter bits = new BitWriter();
+        long minObjects = min(objectCounts);
+        long minLength = min(pageLengths);
+        int objectBits = bitsFor(max(objectCounts) - minObjects);
+        int lengthBits = bitsFor(max(pageLengths) - minLength);
+        long maxShared = 0;
+        for (List<Integer> references : sharedReferences) {
+            maxShared = Math.max(maxShared, references.size());
+        }
+        int sharedCountBits = bitsFor(maxShared);
+        int sharedIdBits = bitsFor(Math.max(0, shared.size() - 1));
+
+        bits.write(minObjects, 32);
+        bits.write(headLength + body.offsets.get(pages.get(0)), 32);
+        bits.write(objectBits, 16);
+        bits.write(minLength, 32);
+        bits.write(lengthBits, 16);
+        bits.write(0, 32);          // 内容流相对页面开头的最小偏移
+        bits.write(0, 16);
+        bits.write(minLength, 32);  // 内容流的最小长度，与页面长度相同
+        bits.write(lengthBits, 16);
+        bits.write(sharedCountBits, 16);
+        bits.write(sharedIdBits, 16);
+        bits.write(0, 16);          // 共享对象位置分数的分子位数
+        bits.write(1, 16);          // 分母
+
+        for (long count : objectCounts) {
+            bits.write(count - minObjects, objectBits);
+        }
+        bits.flush();
+        for (long length : pageLengths) {
+            bits.write(length - minLength, lengthBits);
+        }
+        bits.flush();
+        for (List<Integer> references : sharedReferences) {
+            bits.write(references.size(), sharedCountBits);
+        }
+        bits.flush();
+        for (List<Integer> references : sharedReferences) {
+            for (int index : references) {
+                bits.write(index, sharedIdBits);
+            }
+        }
+        bits.flush();
+        // 内容流偏移占 0 位；内容流长度与页面长度相同
+        for (long length : pageLengths) {
+            bits.write(length - minLength, lengthBits);
+        }
+        bits.flush();
+        int sharedTableOffset = bits.size();
+
+        long[] groupLengths = new long[shared.size()];
+        for (int i = 0; i < shared.size(); i++) {
+            groupLengths[i] = body.lengths.get(shared.get(i));
+        }
+        long minGroup = shared.isEmpty() ? 0 : min(groupLengths);
+        int groupBits = shared.isEmpty() ? 0 : bitsFor(max(groupLengths) - minGroup);
+        COSBase firstShared = layout.part8.isEmpty() ? null : layout.part8.get(0);
+
+        bits.write(firstShared != null ? numbers.get(firstShared) : 0, 32);
+        bits.write(firstShared != null ? headLength + body.offsets.get(firstShared) : 0, 32);
+        bits.write(layout.part6.size(), 32);
+        bits.write(shared.size(), 32);
+        bits.write(0, 16);          // 每组对象数减一的位数
+        bits.write(minGroup, 32);
+        bits.write(groupBits, 16);
+        for (long length : groupLengths) {
+            bits.write(length - minGroup, groupBits);
+        }
+        bits.flush();
+        for (int i = 0; i < shared.size(); i++) {
+            bits.write(0, 1);       // 没有 MD5 签名
+        }
+        return new HintData(bits.toByteArray(), sharedTableOffset);
+    }
+
+    private static int bitsFor(long value) {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long min(long[] values) {
+        long min = Long.MAX_VALUE;
+        for (long value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static long max(long[] values) {
+        long max = 0;
+        for (long value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    // ---------------------------------------------------------------- 工具
+
+    private static String pad(long value) {
+        return String.format(Locale.ROOT, "%-" + NUMBER_WIDTH + "d", value);
+    }
+
+    private static void ascii(OutputStream outputStream, String text) throws IOException {
+        outputStream.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void copyExactly(InputStream inputStream, OutputStream outputStream, long length)
+            throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new IOException("临时文件被截断");
+            }
+            outputStream.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static final class Layout {
+        private final List<COSBase> part4 = new ArrayList<>();
+        private final List<COSBase> part6 = new ArrayList<>();
+        private final List<List<COSBase>> part7 = new ArrayList<>();
+        private final List<COSBase> part8 = new ArrayList<>();
+        private final List<COSBase> part9 = new ArrayList<>();
+        // 每个页面用到的对象（页面对象在最前）及每个对象被多少个页面用到
+        private List<List<COSBase>> users;
+        private Map<COSBase, Integer> pageCounts;
+        private int linearizationNumber;
+        private int hintNumber;
+        private int size;
+    }
+
+    private static final class Body {
+        private final Map<COSBase, Long> offsets = new IdentityHashMap<>();
+        private final Map<COSBase, Long> lengths = new IdentityHashMap<>();
+        private long part4End;
+        private long part6End;
+        private long length;
+    }
+
+    /**
+     * 提示流的数据，以及共享对象提示表在其中的偏移（提示流字典的 /S）
+     */
+    private record HintData(byte[] bytes, int sharedOffset) {
+    }
+
+    /**
+     * 按位写入无符号整数，高位在前
+     */
+    private static final class BitWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int current;
+        private int used;
+
+        void write(long value, int bits) {
+            for (int i = bits - 1; i >= 0; i--) {
+                current = (current << 1) | (int) ((value >>> i) & 1);
+                if (++used == 8) {
+                    bytes.write(current);
+                    current = 0;
+                    used = 0;
+                }
+            }
+        }
+
+        /**
+         * 补齐到字节边界
+         */
+        void flush() {
+            if (used > 0) {
+                write(0, 8 - used);
+            }
+        }
+
+        int size() {
+            return bytes.size() + (used > 0 ? 1 : 0);
+        }
+
+        byte[] toByteArray() {
+            flush();
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+/**
+ * 服务器当前负载过高、暂时无法处理该文档，客户端稍后重试即可
+ */
+public class PdfOverloadedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public PdfOverloadedException(String message) {
+        super(message);
+    }
+}
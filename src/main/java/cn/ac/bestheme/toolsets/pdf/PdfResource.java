@@ -2,41 +2,104 @@ package cn.ac.bestheme.toolsets.pdf;
 
 import jakarta.inject.Inject;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.resteasy.reactive.PartType;
 import org.jboss.resteasy.reactive.RestForm;
 import org.jboss.resteasy.reactive.multipart.FileUpload;
 import org.jboss.logging.Logger;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
 
 @Path("/api/pdf")
 public class PdfResource {
     private static final Logger LOG = Logger.getLogger(PdfResource.class);
+    // 图片解码内存不足时建议客户端重试的等待秒数
+    private static final int RETRY_AFTER_SECONDS = 10;
 
     @Inject
     PdfService pdfService;
 
+    @Inject
+    PdfResultCache resultCache;
+
+    // 批量压缩时同时处理的文件数
+    @ConfigProperty(name = "pdf.batch.concurrency", defaultValue = "2")
+    int batchConcurrency;
+
     public static class PdfUpload {
         @RestForm("file")
         @PartType(MediaType.APPLICATION_OCTET_STREAM)
         public FileUpload file;
+
+        // 可选，目标文件大小（字节）
+        @RestForm("targetSize")
+        public Long targetSize;
+
+        // 可选，图片缩放算法：smooth、bilinear（默认）或 bicubic
+        @RestForm("scaler")
+        public String scaler;
+
+        // 可选，压缩配置：screen、ebook（默认）或 print
+        @RestForm("profile")
+        public String profile;
+
+        // 可选，为 true 时输出线性化（快速网页查看）的PDF
+        @RestForm("linearize")
+        public Boolean linearize;
+
+        CompressionOptions toOptions() {
+            return PdfResource.toOptions(targetSize, scaler, profile, linearize);
+        }
+    }
+
+    public static class PdfBatchUpload {
+        @RestForm("files")
+        @PartType(MediaType.APPLICATION_OCTET_STREAM)
+        public List<FileUpload> files;
+
+        // 可选，每个文件的目标大小（字节）
+        @RestForm("targetSize")
+        public Long targetSize;
+
+        // 可选，图片缩放算法：smooth、bilinear（默认）或 bicubic
+        @RestForm("scaler")
+        public String scaler;
+
+        // 可选，压缩配置：screen、ebook（默认）或 print
+        @RestForm("profile")
+        public String profile;
+
+        // 可选，为 true 时输出线性化（快速网页查看）的PDF
+        @RestForm("linearize")
+        public Boolean linearize;
+
+        CompressionOptions toOptions() {
+            return PdfResource.toOptions(targetSize, scaler, profile, linearize);
+        }
     }
 
     @POST
     @Path("/compress")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    public Response compressPdf(PdfUpload upload) {
+    public Response compressPdf(PdfUpload upload, @HeaderParam("If-None-Match") String ifNoneMatch) {
         try {
             if (upload == null || upload.file == null) {
                 LOG.error("没有收到文件");
@@ -46,45 +109,78 @@ public class PdfResource {
                         .build();
             }
 
-            // 记录一下收到的文件名，便于调试
-            String originalFileName = upload.file.fileName();
-            LOG.info("接收到的原始文件名: " + originalFileName);
-            
-            // 如果文件名是路径格式，则只获取文件名部分
-            if (originalFileName.contains("/") || originalFileName.contains("\\")) {
-                originalFileName = Paths.get(originalFileName).getFileName().toString();
-                LOG.info("处理后的文件名: " + originalFileName);
-            }
-            
-            String compressedFileName = getCompressedFileName(originalFileName);
+            String compressedFileName = getCompressedFileName(getOriginalFileName(upload.file));
             LOG.info("压缩后的文件名: " + compressedFileName);
 
-            // 使用 InputStream 而不是 Path，因为我们不需要实际的文件
-            try (InputStream inputStream = Files.newInputStream(upload.file.uploadedFile())) {
-                byte[] compressedPdf = pdfService.compressPdf(inputStream);
-                
-                if (compressedPdf == null || compressedPdf.length == 0) {
-                    LOG.error("压缩后的PDF为空");
-                    return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                            .type(MediaType.TEXT_PLAIN)
-                            .entity("压缩后的PDF为空")
-                            .build();
-                }
+            // 先在请求线程中完成加载和图片压缩，这样解析失败仍能返回错误状态码；
+            // 文档本身在写响应体时才序列化，直接写入响应流，不在堆中保留整份结果
+            CompressionOptions options = upload.toOptions();
 
-                // 处理非ASCII字符文件名
-                String encodedFileName = encodeFileName(compressedFileName);
+            // 相同文件、相同参数的压缩结果相同，以缓存键作为 ETag，客户端已有结果时不必重新下载
+            String cacheKey = PdfResultCache.key(upload.file.uploadedFile(), options);
+            EntityTag etag = new EntityTag(cacheKey);
+            if (matchesEtag(ifNoneMatch, etag)) {
+                LOG.info("客户端已有压缩结果: " + compressedFileName);
+                return Response.notModified(etag).build();
+            }
 
-                return Response.ok(compressedPdf)
-                        .header("Content-Disposition", "attachment; filename=\"" + compressedFileName + "\"; filename*=UTF-8''" + encodedFileName)
-                        .type(MediaType.APPLICATION_OCTET_STREAM)
-                        .build();
+            StreamingOutput output;
+            Optional<InputStream> cached = resultCache.open(cacheKey);
+            if (cached.isPresent()) {
+                LOG.info("命中压缩结果缓存: " + compressedFileName);
+                output = outputStream -> {
+                    try (InputStream inputStream = cached.get()) {
+                        inputStream.transferTo(outputStream);
+                    }
+                };
+            } else {
+                CompressedPdf compressedPdf;
+                try (InputStream inputStream = Files.newInputStream(upload.file.uploadedFile())) {
+                    compressedPdf = pdfService.compress(inputStream, options);
+                }
+                output = outputStream -> {
+                    try (compressedPdf) {
+                        if (!resultCache.isEnabled()) {
+                            compressedPdf.writeTo(outputStream);
+                            return;
+                        }
+                        // 写响应的同时写入缓存，响应完整写出后才加入缓存；缓存写入失败不影响响应
+                        PdfResultCache.Writer cacheWriter;
+                        try {
+                            cacheWriter = resultCache.writer(cacheKey);
+                        } catch (IOException e) {
+                            LOG.warn("无法创建缓存文件，本次结果不缓存", e);
+                            compressedPdf.writeTo(outputStream);
+                            return;
+                        }
+                        try (cacheWriter) {
+                            TeeOutputStream tee = new TeeOutputStream(outputStream, cacheWriter);
+                            compressedPdf.writeTo(tee);
+                            if (!tee.secondFailed()) {
+                                commit(cacheWriter);
+                            }
+                        }
+                    }
+                };
             }
+
+            return Response.ok(output)
+                    .header("Content-Disposition", contentDisposition(compressedFileName))
+                    .tag(etag)
+                    .type(MediaType.APPLICATION_OCTET_STREAM)
+                    .build();
         } catch (IllegalArgumentException e) {
             LOG.error("请求参数错误", e);
             return Response.status(Response.Status.BAD_REQUEST)
                     .type(MediaType.TEXT_PLAIN)
                     .entity(e.getMessage())
                     .build();
+        } catch (PdfOverloadedException e) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After", RETRY_AFTER_SECONDS)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity(e.getMessage())
+                    .build();
         } catch (Exception e) {
             LOG.error("PDF压缩失败", e);
             return Response.serverError()
@@ -94,7 +190,91 @@ public class PdfResource {
         }
     }
 
-    private String getCompressedFileName(String originalFileName) {
+    @POST
+    @Path("/compress/batch")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces("application/zip")
+    public Response compressBatch(PdfBatchUpload upload) {
+        try {
+            if (upload == null || upload.files == null || upload.files.isEmpty()) {
+                LOG.error("没有收到文件");
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("没有收到文件")
+                        .build();
+            }
+            LOG.info("批量压缩文件数: " + upload.files.size());
+
+            PdfBatchWriter output = new PdfBatchWriter(pdfService, upload.files, upload.toOptions(), batchConcurrency);
+            return Response.ok(output)
+                    .header("Content-Disposition", contentDisposition("compressed.zip"))
+                    .type("application/zip")
+                    .build();
+        } catch (IllegalArgumentException e) {
+            LOG.error("请求参数错误", e);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity(e.getMessage())
+                    .build();
+        }
+    }
+
+    private static void commit(PdfResultCache.Writer cacheWriter) {
+        try {
+            cacheWriter.commit();
+        } catch (IOException e) {
+            LOG.warn("写入压缩结果缓存失败", e);
+        }
+    }
+
+    /**
+     * 判断 If-None-Match 是否包含给定的 ETag（弱比较）。
+     * 按规范非 GET 请求匹配时应返回 412，但这里的结果完全由上传内容和参数决定，
+     * 返回 304 让客户端直接使用已有的文件。"*" 不表示客户端持有这一份结果，不视为匹配
+     */
+    static boolean matchesEtag(String ifNoneMatch, EntityTag etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("\"" + etag.getValue() + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static CompressionOptions toOptions(Long targetSize, String scaler, String profile, Boolean linearize) {
+        CompressionOptions options = CompressionOptions.defaults();
+        options.setTargetSize(targetSize);
+        options.setLinearize(Boolean.TRUE.equals(linearize));
+        if (scaler != null && !scaler.isBlank()) {
+            options.setScaling(ScalingAlgorithm.fromName(scaler));
+        }
+        if (profile != null && !profile.isBlank()) {
+            options.setProfile(CompressionProfile.fromName(profile));
+        }
+        return options;
+    }
+
+    static String getOriginalFileName(FileUpload file) {
+        // 记录一下收到的文件名，便于调试
+        String originalFileName = file.fileName();
+        LOG.info("接收到的原始文件名: " + originalFileName);
+
+        // 如果文件名是路径格式，则只获取文件名部分
+        if (originalFileName != null && (originalFileName.contains("/") || originalFileName.contains("\\"))) {
+            originalFileName = Paths.get(originalFileName).getFileName().toString();
+            LOG.info("处理后的文件名: " + originalFileName);
+        }
+        return originalFileName;
+    }
+
+    static String getCompressedFileName(String originalFileName) {
         if (originalFileName == null || originalFileName.trim().isEmpty()) {
             return "compressed.pdf";
         }
@@ -106,7 +286,86 @@ public class PdfResource {
         return baseName + "_compressed.pdf";
     }
     
-    private String encodeFileName(String fileName) {
+    static String contentDisposition(String fileName) {
+        // 处理非ASCII字符文件名
+        return "attachment; filename=\"" + fileName + "\"; filename*=UTF-8''" + encodeFileName(fileName);
+    }
+
+    /**
+     * 同时写入两个输出流。PDDocument.save 结束时会关闭输出流，这里只关闭第一个，
+     * 第二个（缓存文件）由调用方在确认完整写出后提交或丢弃。
+     * 第二个流写入失败（例如磁盘已满）时记录日志并不再写入，第一个流（响应）照常写完
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+        private boolean secondFailed;
+
+        TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        boolean secondFailed() {
+            return secondFailed;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            if (!secondFailed) {
+                try {
+                    second.write(b);
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            if (!secondFailed) {
+                try {
+                    second.write(b, off, len);
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            flushSecond();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                first.close();
+            } finally {
+                flushSecond();
+            }
+        }
+
+        private void flushSecond() {
+            if (!secondFailed) {
+                try {
+                    second.flush();
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        private void failed(IOException e) {
+            LOG.warn("写入压缩结果缓存失败，本次结果不缓存", e);
+            secondFailed = true;
+        }
+    }
+
+    private static String encodeFileName(String fileName) {
         try {
             return URLEncoder.encode(fileName, StandardCharsets.UTF_8.name()).replace("+", "%20");
         } catch (UnsupportedEncodingException e) {
@@ -0,0 +1,253 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 压缩结果的磁盘缓存。键为上传文件内容的 SHA-256 加上压缩参数，
+ * 同一文件以相同参数再次上传时直接返回保存的结果，不再经过 PDFBox。
+ * 缓存总大小有上限，超出时按最近最少使用的顺序删除。
+ */
+@ApplicationScoped
+public class PdfResultCache {
+    private static final Logger LOG = Logger.getLogger(PdfResultCache.class);
+    private static final String SUFFIX = ".pdf";
+    // 配置的缓存目录可能与其他程序共用，缓存文件放在其中的这个子目录下
+    private static final String SUBDIRECTORY = "pdf-results";
+    // 缓存文件为 <SHA-256>.pdf，未写完的临时文件为 <SHA-256>.<UUID>.tmp；其他文件不计入也不删除
+    private static final Pattern ENTRY = Pattern.compile("[0-9a-f]{64}\\.pdf");
+    private static final Pattern TEMP = Pattern.compile(
+            "[0-9a-f]{64}\\.[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}\\.tmp");
+    // 压缩实现改变、同一输入和参数的结果随之变化时增加版本号，旧版本的缓存不再命中，随后被淘汰
+    private static final String KEY_VERSION = "1";
+
+    // 是否启用结果缓存
+    @ConfigProperty(name = "pdf.cache.enabled", defaultValue = "true")
+    boolean enabled;
+
+    // 缓存文件合计的最大大小
+    @ConfigProperty(name = "pdf.cache.max-size", defaultValue = "1G")
+    MemorySize maxSize;
+
+    // 缓存目录，结果文件放在其下的子目录中；未配置时使用系统临时目录下的 pdf-cache，重启后仍可命中
+    @ConfigProperty(name = "pdf.cache.directory")
+    Optional<String> directory;
+
+    @Inject
+    MeterRegistry registry;
+
+    // 按访问顺序排列，最久未使用的在最前面；值为文件大小
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+    private Path cacheDirectory;
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void init() {
+        hits = Counter.builder("pdf.cache.requests").tag("result", "hit").register(registry);
+        misses = Counter.builder("pdf.cache.requests").tag("result", "miss").register(registry);
+        if (!enabled) {
+            return;
+        }
+        try {
+            Path base = directory.map(Path::of).orElse(Path.of(System.getProperty("java.io.tmpdir"), "pdf-cache"));
+            cacheDirectory = Files.createDirectories(base.resolve(SUBDIRECTORY));
+            loadEntries();
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法创建结果缓存目录", e);
+        }
+        LOG.info("压缩结果缓存目录: " + cacheDirectory + "，已有 " + entries.size() + " 个文件，共 " + totalSize + " 字节");
+    }
+
+    /**
+     * 重启后按文件修改时间恢复访问顺序，并删除上次未写完的临时文件
+     */
+    private void loadEntries() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(cacheDirectory)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(file -> file.toFile().lastModified()));
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (ENTRY.matcher(name).matches()) {
+                long size = Files.size(file);
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                totalSize += size;
+            } else if (TEMP.matcher(name).matches()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        evict();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算缓存键：缓存版本号、文件内容的 SHA-256 与压缩参数一起参与摘要，任一变化都会得到不同的键
+     */
+    public static String key(Path file, CompressionOptions options) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((KEY_VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            for (int read; (read = inputStream.read(buffer)) != -1; ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        digest.update(options.fingerprint().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 查找缓存的结果，命中时立即打开文件，之后即使该条目被淘汰也能读完
+     */
+    public Optional<InputStream> open(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        synchronized (this) {
+            if (entries.get(key) != null) {
+                try {
+                    InputStream inputStream = Files.newInputStream(file(key));
+                    hits.increment();
+                    return Optional.of(inputStream);
+                } catch (IOException e) {
+                    // 文件被外部删除，从索引中移除
+                    LOG.warn("缓存文件无法读取: " + key, e);
+                    remove(key);
+                }
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * 开始写入一个缓存条目。数据先写入临时文件，调用 {@link Writer#commit()} 后才对查找可见，
+     * 写入中途失败时关闭 Writer 即可丢弃
+     */
+    public Writer writer(String key) throws IOException {
+        Path temp = cacheDirectory.resolve(key + "." + UUID.randomUUID() + ".tmp");
+        return new Writer(key, temp, new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024));
+    }
+
+    private Path file(String key) {
+        return cacheDirectory.resolve(key + SUFFIX);
+    }
+
+    private synchronized void put(String key, Path temp) throws IOException {
+        long size = Files.size(temp);
+        if (size > maxSize.asLongValue()) {
+            Files.deleteIfExists(temp);
+            return;
+        }
+        Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Long previous = entries.put(key, size);
+        totalSize += size - (previous != null ? previous : 0);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalSize > maxSize.asLongValue() && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalSize -= eldest.getValue();
+            deleteFile(eldest.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalSize -= size;
+        }
+        deleteFile(key);
+    }
+
+    private void deleteFile(String key) {
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            LOG.warn("删除缓存文件失败: " + key, e);
+        }
+    }
+
+    /**
+     * 正在写入的缓存条目
+     */
+    public class Writer extends OutputStream {
+        private final String key;
+        private final Path temp;
+        private final OutputStream out;
+        private boolean committed;
+
+        private Writer(String key, Path temp, OutputStream out) {
+            this.key = key;
+            this.temp = temp;
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        public void commit() throws IOException {
+            out.close();
+            put(key, temp);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package cn.ac.bestheme.toolsets.pdf;
 
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.configuration.MemorySize;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
@@ -7,120 +10,587 @@ import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
-import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @ApplicationScoped
 public class PdfService {
     private static final Logger LOG = Logger.getLogger(PdfService.class);
-    private static final float IMAGE_QUALITY = 0.5f; // 图片质量，0.5表示50%
-    private static final int MAX_IMAGE_DIMENSION = 1000; // 最大图片尺寸
+    // 按目标大小估算时预留的余量，用于抵消保存时交叉引用表、对象头等无法预估的开销
+    private static final double TARGET_SIZE_MARGIN = 0.95;
+
+    // 图片解码、缩放、编码线程数，0 表示使用CPU核数
+    @ConfigProperty(name = "pdf.compress.image-threads", defaultValue = "0")
+    int imageThreads;
+
+    // 每个文档最多占用的 PDFBox 堆内存，超出部分写入临时文件
+    @ConfigProperty(name = "pdf.memory.per-request", defaultValue = "64M")
+    MemorySize perRequestMemory;
+
+    // 所有并发请求合计最多占用的 PDFBox 堆内存
+    @ConfigProperty(name = "pdf.memory.total", defaultValue = "512M")
+    MemorySize totalMemory;
+
+    // 临时文件目录，未配置时使用系统临时目录
+    @ConfigProperty(name = "pdf.memory.scratch-dir")
+    Optional<String> scratchDir;
+
+    // 所有并发请求合计的图片解码内存（按图片尺寸估算），超出时新文档等待或被拒绝
+    @ConfigProperty(name = "pdf.decode.budget", defaultValue = "1G")
+    MemorySize decodeBudgetSize;
+
+    // 解码内存不足时文档最多等待的时间，超时后拒绝
+    @ConfigProperty(name = "pdf.decode.admission-timeout", defaultValue = "10s")
+    Duration admissionTimeout;
+
+    // 抽样解码后像素数超过该值的图片按水平条带分段解码
+    @ConfigProperty(name = "pdf.decode.strip-pixels", defaultValue = "4194304")
+    long stripPixels;
+
+    // 图片压缩后是否进行结构优化（删除未使用的资源、缩略图，合并重复流，重新压缩 Flate 流）
+    @ConfigProperty(name = "pdf.compress.optimize-structure", defaultValue = "true")
+    boolean optimizeStructure;
+
+    @Inject
+    CompressionMetrics metrics;
+
+    private ExecutorService imageExecutor;
+    private int threads;
+    private MemoryBudget memoryBudget;
+    private DecodeBudget decodeBudget;
+
+    @PostConstruct
+    void init() {
+        threads = imageThreads > 0 ? imageThreads : Runtime.getRuntime().availableProcessors();
+        memoryBudget = new MemoryBudget(totalMemory.asLongValue());
+        decodeBudget = new DecodeBudget(decodeBudgetSize.asLongValue());
+        metrics.monitor(decodeBudget);
+        if (scratchDir.isPresent()) {
+            try {
+                Files.createDirectories(Path.of(scratchDir.get()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("无法创建临时文件目录: " + scratchDir.get(), e);
+            }
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        imageExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-image-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 缩放线程长期持有的暂存图片不属于任何文档，不计入解码预算，按线程数固定占用
+        LOG.info("图片压缩线程数: " + threads + "，缩放暂存图片最多占用 "
+            + threads * ProgressiveImageScaler.POOLED_BYTES_PER_THREAD / (1024 * 1024) + " MB（不计入解码预算）");
+    }
+
+    /**
+     * 图片解码内存预算，测试中用于检查额度是否全部归还
+     */
+    DecodeBudget decodeBudget() {
+        return decodeBudget;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        imageExecutor.shutdownNow();
+    }
 
     public byte[] compressPdf(Path path) throws IOException {
         if (path == null) {
             throw new IllegalArgumentException("文件路径不能为空");
         }
-        return compressPdf(PDDocument.load(path.toFile()));
+        metrics.compressionStarted();
+        MemoryBudget.Lease memoryLease = memoryBudget.acquire(perRequestMemory.asLongValue());
+        PDDocument document;
+        long inputSize;
+        try {
+            Timer.Sample sample = Timer.start();
+            document = PDDocument.load(path.toFile(), memoryUsageSetting(memoryLease));
+            sample.stop(metrics.timer(CompressionMetrics.Stage.LOAD));
+            inputSize = Files.size(path);
+        } catch (IOException | RuntimeException e) {
+            release(memoryLease);
+            throw e;
+        }
+        return toByteArray(compress(document, memoryLease, inputSize, CompressionOptions.defaults(), admissionTimeout));
     }
 
     public byte[] compressPdf(InputStream inputStream) throws IOException {
+        return toByteArray(compress(inputStream));
+    }
+
+    public CompressedPdf compress(InputStream inputStream) throws IOException {
+        return compress(inputStream, CompressionOptions.defaults());
+    }
+
+    /**
+     * 压缩PDF中的图片，但不立即序列化文档。
+     * 调用方负责通过 {@link CompressedPdf#writeTo} 把结果写到目标流（例如HTTP响应），并在之后关闭它。
+     * 图片解码内存不足时最多等待 pdf.decode.admission-timeout，仍不足则抛出 {@link PdfOverloadedException}
+     */
+    public CompressedPdf compress(InputStream inputStream, CompressionOptions options) throws IOException {
+        return compress(inputStream, options, admissionTimeout);
+    }
+
+    /**
+     * 与 {@link #compress(InputStream, CompressionOptions)} 相同，但图片解码内存不足时一直等待，不会被拒绝。
+     * 用于后台任务和已开始写出响应的批量压缩，它们没有可以重试的客户端
+     */
+    public CompressedPdf compressWhenAdmitted(InputStream inputStream, CompressionOptions options) throws IOException {
+        return compress(inputStream, options, null);
+    }
+
+    private CompressedPdf compress(InputStream inputStream, CompressionOptions options, Duration admissionTimeout)
+            throws IOException {
         if (inputStream == null) {
             throw new IllegalArgumentException("输入流不能为空");
         }
-        return compressPdf(PDDocument.load(inputStream));
+        metrics.compressionStarted();
+        MemoryBudget.Lease memoryLease = memoryBudget.acquire(perRequestMemory.asLongValue());
+        CountingInputStream countingStream = new CountingInputStream(inputStream);
+        PDDocument document;
+        try {
+            Timer.Sample sample = Timer.start();
+            document = PDDocument.load(countingStream, memoryUsageSetting(memoryLease));
+            sample.stop(metrics.timer(CompressionMetrics.Stage.LOAD));
+        } catch (IOException | RuntimeException e) {
+            release(memoryLease);
+            throw e;
+        }
+        return compress(document, memoryLease, countingStream.getCount(), options, admissionTimeout);
+    }
+
+    /**
+     * 按分到的堆内存额度加载文档：额度内的数据保存在内存中，超出部分写入临时文件；
+     * 没有分到额度时完全使用临时文件
+     */
+    private MemoryUsageSetting memoryUsageSetting(MemoryBudget.Lease memoryLease) {
+        MemoryUsageSetting setting = memoryLease.bytes() > 0
+                ? MemoryUsageSetting.setupMixed(memoryLease.bytes())
+                : MemoryUsageSetting.setupTempFileOnly();
+        if (memoryLease.bytes() < perRequestMemory.asLongValue()) {
+            LOG.debug("PDF内存预算不足，本次分到 " + memoryLease.bytes() + " 字节，其余使用临时文件");
+        }
+        return scratchDir.map(dir -> setting.setTempDir(new File(dir))).orElse(setting);
     }
 
-    private byte[] compressPdf(PDDocument document) throws IOException {
+    private CompressedPdf compress(PDDocument document, MemoryBudget.Lease memoryLease, long inputSize,
+                                   CompressionOptions options, Duration admissionTimeout) throws IOException {
+        metrics.recordInput(inputSize);
         try {
             // 移除所有安全限制
             document.setAllSecurityToBeRemoved(true);
 
-            // 压缩文档中的图片
+            // 收集文档中的图片，然后并行压缩
+            ImageCatalog catalog = new ImageCatalog();
+            ResourceWalker walker = new ResourceWalker();
             for (PDPage page : document.getPages()) {
-                compressImagesInPage(document, page);
+                collectImagesInPage(page, walker, catalog);
+            }
+            CompressionStats stats;
+            try (DecodeBudget.Reservation reservation = admit(catalog, options, admissionTimeout)) {
+                stats = recompressImages(document, catalog, reservation, inputSize, options);
+            }
+            if (optimizeStructure) {
+                stats.setStructureSavings(StructureOptimizer.optimize(document));
+                LOG.info("结构优化节省: " + stats.getStructureSavings());
             }
 
-            // 创建输出流并保存文档
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            document.save(outputStream);
-            
-            return outputStream.toByteArray();
-        } catch (IOException e) {
-            LOG.error("PDF压缩失败", e);
+            return new CompressedPdf(document, memoryLease, stats, metrics, inputSize, options.isLinearize(),
+                    scratchDir.map(Path::of).orElse(null));
+        } catch (IOException | RuntimeException e) {
+            if (!(e instanceof PdfOverloadedException)) {
+                LOG.error("PDF压缩失败", e);
+            }
+            try {
+                document.close();
+            } finally {
+                release(memoryLease);
+            }
             throw e;
+        }
+    }
+
+    /**
+     * 按文档中最大的几张图片（张数与图片线程数相同）的估算解码内存之和预留额度，
+     * 尺寸相同的扫描页也能同时解码到占满所有线程；等待超过 admissionTimeout 后拒绝该文档，为 null 时一直等待。
+     * 需要缩小的图片按可能用到的最大边长（按目标大小压缩时为参数表中的第一项）抽样后估算
+     */
+    private DecodeBudget.Reservation admit(ImageCatalog catalog, CompressionOptions options, Duration admissionTimeout)
+            throws IOException {
+        CompressionProfile profile = options.getProfile();
+        ImageSettings settings = options.getTargetSize() != null ? ImageSettings.LADDER.get(0) : profile.imageSettings();
+        List<Long> decodedBytes = new ArrayList<>();
+        for (ImageCatalog.SourceImage source : catalog.images()) {
+            decodedBytes.add(source.decodedBytes(subsampling(source, source.maxDimension(settings, profile.maxDpi()))));
+        }
+        decodedBytes.sort(Comparator.reverseOrder());
+        long needed = 0;
+        for (long bytes : decodedBytes.subList(0, Math.min(threads, decodedBytes.size()))) {
+            needed += bytes;
+        }
+        DecodeBudget.Reservation reservation = decodeBudget.reserve(needed, admissionTimeout);
+        if (reservation == null) {
+            metrics.recordRejected();
+            LOG.warn("图片解码内存不足，拒绝文档：需要 " + needed + " 字节，已预留 " + decodeBudget.reserved()
+                    + " / " + decodeBudget.total() + " 字节");
+            throw new PdfOverloadedException("服务器繁忙，图片解码内存不足，请稍后重试");
+        }
+        return reservation;
+    }
+
+    /**
+     * 没有生成 {@link CompressedPdf} 就失败时，归还内存额度并结束本次压缩的计数
+     */
+    private void release(MemoryBudget.Lease memoryLease) {
+        try {
+            memoryLease.close();
         } finally {
-            if (document != null) {
-                document.close();
+            metrics.compressionFinished();
+        }
+    }
+
+    private byte[] toByteArray(CompressedPdf compressedPdf) throws IOException {
+        try (compressedPdf) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            compressedPdf.writeTo(outputStream);
+            return outputStream.toByteArray();
+        }
+    }
+
+    /**
+     * 登记页面用到的图片，包括表单 XObject、平铺图案和注释外观中嵌套的图片。
+     * 多个页面共用的资源字典只在第一次遇到时登记
+     */
+    private void collectImagesInPage(PDPage page, ResourceWalker walker, ImageCatalog catalog) throws IOException {
+        PDRectangle box = page.getCropBox();
+        float pageSize = Math.max(box.getWidth(), box.getHeight());
+
+        walker.walk(page, resources -> {
+            for (COSName name : resources.getXObjectNames()) {
+                PDXObject object = resources.getXObject(name);
+                if (object instanceof PDImageXObject) {
+                    PDImageXObject image = (PDImageXObject) object;
+                    prefetch(image);
+                    catalog.add(resources, name, image, pageSize);
+                }
+            }
+        });
+    }
+
+    /**
+     * PDFBox 按需解析间接对象，而解析器不是线程安全的。
+     * 在提交到线程池之前，先在当前线程中把解码时会用到的对象全部解析出来。
+     */
+    private void prefetch(PDImageXObject image) throws IOException {
+        image.getCOSObject().getFilters();
+        image.getDecode();
+        // 无法确定颜色空间的图片会被跳过，这里不因此中断
+        ImageDecision.colorSpace(image);
+        image.getColorKeyMask();
+        image.getMask();
+        image.getSoftMask();
+    }
+
+    private CompressionStats recompressImages(PDDocument document, ImageCatalog catalog,
+                                              DecodeBudget.Reservation reservation, long inputSize,
+                                              CompressionOptions options) throws IOException {
+        List<ImageCatalog.SourceImage> images = catalog.images();
+        ImageScaler scaler = options.getScaling().scaler();
+        CompressionProfile profile = options.getProfile();
+        List<ImageOutcome> outcomes;
+        if (options.getTargetSize() != null) {
+            outcomes = encodeForTargetSize(images, catalog, reservation, inputSize, options.getTargetSize(), profile,
+                    scaler);
+        } else {
+            outcomes = encodeAll(images, reservation, profile.imageSettings(), profile, scaler, Long.MAX_VALUE);
+        }
+
+        // PDFBox 的文档模型不是线程安全的，写回资源字典只在当前线程中按顺序进行；
+        // 同一图片的所有引用位置共用一个新图片对象，输出文件中只保存一份
+        CompressionStats stats = new CompressionStats();
+        stats.setReferences(catalog.references());
+        stats.setPeakDecodes(reservation.peakLeases());
+        for (int i = 0; i < images.size(); i++) {
+            ImageOutcome outcome = outcomes.get(i);
+            stats.record(outcome.rule());
+            if (outcome.encoded() != null && outcome.encoded().isGrayscale()) {
+                stats.recordGrayscale();
+            }
+            metrics.recordImage(outcome.rule());
+            if (outcome.encoded() != null) {
+                images.get(i).replaceWith(outcome.encoded().toXObject(document));
+            }
+        }
+        LOG.info("压缩配置 " + profile + "，图片压缩统计: " + stats);
+        return stats;
+    }
+
+    /**
+     * 在 {@link ImageSettings#LADDER} 上二分查找保真度最高、且估算大小不超过目标的参数。
+     * 输出大小按“原文件中非图片部分 + 图片处理后的大小”估算，不需要每次尝试都保存整个文档；
+     * 一次尝试中图片的累计大小超出预算时立即放弃该次尝试。配置的分辨率上限和颜色处理在每次尝试中都生效。
+     */
+    private List<ImageOutcome> encodeForTargetSize(List<ImageCatalog.SourceImage> images, ImageCatalog catalog,
+                                                   DecodeBudget.Reservation reservation, long inputSize, long targetSize, CompressionProfile profile,
+                                                   ImageScaler scaler) throws IOException {
+        long otherBytes = Math.max(0, inputSize - catalog.encodedBytes());
+        long imageBudget = (long) (targetSize * TARGET_SIZE_MARGIN) - otherBytes;
+        List<ImageSettings> ladder = ImageSettings.LADDER;
+
+        List<ImageOutcome> best = null;
+        ImageSettings bestSettings = null;
+        int low = 0;
+        int high = ladder.size() - 1;
+        while (imageBudget > 0 && low <= high) {
+            int mid = (low + high) >>> 1;
+            List<ImageOutcome> attempt = encodeAll(images, reservation, ladder.get(mid), profile, scaler, imageBudget);
+            if (attempt != null) {
+                best = attempt;
+                bestSettings = ladder.get(mid);
+                high = mid - 1;
+            } else {
+                low = mid + 1;
             }
         }
+
+        if (best == null) {
+            // 即使使用最低质量也无法达到目标大小，尽量压到最小
+            bestSettings = ladder.get(ladder.size() - 1);
+            best = encodeAll(images, reservation, bestSettings, profile, scaler, Long.MAX_VALUE);
+            LOG.warn("无法压缩到目标大小 " + targetSize + " 字节，使用最低质量参数");
+        }
+        LOG.info("目标大小 " + targetSize + " 字节，选用图片质量 " + bestSettings.quality()
+                + "，最大尺寸 " + bestSettings.maxDimension());
+        return best;
     }
 
-    private void compressImagesInPage(PDDocument document, PDPage page) throws IOException {
-        PDResources resources = page.getResources();
-        if (resources == null) return;
+    /**
+     * 先按元数据决定每张图片的处理方式，再在线程池中并行解码、缩放、编码需要处理的图片，
+     * 每个不重复的图片只提交一次，解码前从文档的预留额度中申请估算的解码内存。
+     * 图片处理后的累计大小超过 limit 时放弃剩余任务并返回 null。
+     * 无论成功、超出 limit 还是出错，都等所有已提交的任务结束后才返回，调用方随后可以安全地关闭文档或开始下一次尝试。
+     */
+    private List<ImageOutcome> encodeAll(List<ImageCatalog.SourceImage> images, DecodeBudget.Reservation reservation,
+                                         ImageSettings settings, CompressionProfile profile, ImageScaler scaler,
+                                         long limit) throws IOException {
+        List<ImageDecision.Rule> rules = new ArrayList<>(images.size());
+        List<Future<ImageOutcome>> futures = new ArrayList<>(images.size());
+        AtomicBoolean abandoned = new AtomicBoolean();
+        for (ImageCatalog.SourceImage source : images) {
+            int maxDimension = source.maxDimension(settings, profile.maxDpi());
+            ImageDecision.Rule rule = ImageDecision.decide(source.image(), source.encodedLength(), maxDimension,
+                    profile.colorHandling());
+            rules.add(rule);
+            int subsampling = rule.action() == ImageDecision.Action.DOWNSCALE ? subsampling(source, maxDimension) : 1;
+            long decodedBytes = source.decodedBytes(subsampling);
+            futures.add(rule.action() == ImageDecision.Action.SKIP
+                    ? null
+                    : imageExecutor.submit(() -> {
+                        if (abandoned.get()) {
+                            return null;
+                        }
+                        DecodeBudget.Reservation.Lease lease = reservation.acquire(decodedBytes);
+                        try {
+                            // 等待解码内存期间本次尝试可能已被放弃
+                            if (abandoned.get()) {
+                                return null;
+                            }
+                            return encodeImage(source, rule, settings.quality(), maxDimension, subsampling, scaler);
+                        } finally {
+                            lease.close();
+                        }
+                    }));
+        }
 
-        // 遍历页面中的所有图片
-        for (COSName name : resources.getXObjectNames()) {
-            PDXObject object = resources.getXObject(name);
-            if (object instanceof PDImageXObject) {
-                PDImageXObject image = (PDImageXObject) object;
-                BufferedImage bufferedImage = image.getImage();
+        try {
+            List<ImageOutcome> outcomes = new ArrayList<>(images.size());
+            long total = 0;
+            for (int i = 0; i < images.size(); i++) {
+                Future<ImageOutcome> future = futures.get(i);
+                ImageOutcome outcome = future != null ? await(future) : new ImageOutcome(rules.get(i), null);
+                total += outcome.encoded() != null ? outcome.encoded().size() : images.get(i).encodedLength();
+                if (total > limit) {
+                    return null;
+                }
+                outcomes.add(outcome);
+            }
+            return outcomes;
+        } finally {
+            // PDFBox 解码和 JPEG 编码都不检查中断，cancel 无法停止正在运行的任务，而已取消的 Future 也不会等任务结束。
+            // 改为标记放弃：尚未开始的任务直接返回，正在运行的任务等它结束，
+            // 避免它们在文档关闭后或下一次尝试中与其他线程同时读取同一个非线程安全的数据流
+            abandoned.set(true);
+            awaitAll(futures);
+        }
+    }
 
-                // 如果图片尺寸过大，进行缩放
-                if (bufferedImage.getWidth() > MAX_IMAGE_DIMENSION || 
-                    bufferedImage.getHeight() > MAX_IMAGE_DIMENSION) {
-                    bufferedImage = scaleImage(bufferedImage);
+    /**
+     * 等待所有任务结束，忽略任务的结果和异常。等待期间被中断时继续等待，结束后恢复中断标志
+     */
+    private static void awaitAll(List<Future<ImageOutcome>> futures) {
+        boolean interrupted = false;
+        for (Future<ImageOutcome> future : futures) {
+            while (future != null) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
                 }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 需要缩小的图片按整数倍抽样解码，抽样后仍超出 maxDimension 的部分再由 scaler 缩放
+     */
+    private static int subsampling(ImageCatalog.SourceImage source, int maxDimension) {
+        return SubsampledDecoder.subsampling(source.image().getWidth(), source.image().getHeight(), maxDimension);
+    }
+
+    private ImageOutcome encodeImage(ImageCatalog.SourceImage source, ImageDecision.Rule rule,
+                                     float quality, int maxDimension, int subsampling, ImageScaler scaler)
+            throws IOException {
+        Timer.Sample sample = Timer.start();
+        BufferedImage bufferedImage = SubsampledDecoder.decode(source.image(), subsampling, stripPixels);
+        sample.stop(metrics.timer(CompressionMetrics.Stage.DECODE));
+
+        // 灰度内容转为单通道，缩放和编码只处理一个通道，输出为 DeviceGray
+        BufferedImage gray = Grayscale.convertIfNeutral(bufferedImage);
+        if (gray != null) {
+            bufferedImage = gray;
+        }
 
-                // 使用JPEG压缩重新创建图片
-                PDImageXObject newImage = JPEGFactory.createFromImage(
-                    document,
-                    bufferedImage,
-                    IMAGE_QUALITY
-                );
+        // 如果抽样解码后图片尺寸仍然过大，进行缩放
+        if (rule.action() == ImageDecision.Action.DOWNSCALE
+                && Math.max(bufferedImage.getWidth(), bufferedImage.getHeight()) > maxDimension) {
+            sample = Timer.start();
+            bufferedImage = scaleImage(bufferedImage, maxDimension, scaler);
+            sample.stop(metrics.timer(CompressionMetrics.Stage.SCALE));
+        }
+
+        // 使用JPEG压缩重新编码图片，结果不比原图小时保留原图
+        sample = Timer.start();
+        EncodedImage encoded = EncodedImage.encode(bufferedImage, quality);
+        sample.stop(metrics.timer(CompressionMetrics.Stage.ENCODE));
+        if (encoded.size() >= source.encodedLength()) {
+            return new ImageOutcome(ImageDecision.Rule.NO_GAIN, null);
+        }
+        return new ImageOutcome(rule, encoded);
+    }
 
-                // 替换原图片
-                resources.put(name, newImage);
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("图片压缩被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new IOException("图片压缩失败", cause);
         }
     }
 
-    private BufferedImage scaleImage(BufferedImage original) {
+    private BufferedImage scaleImage(BufferedImage original, int maxDimension, ImageScaler scaler) {
         int originalWidth = original.getWidth();
         int originalHeight = original.getHeight();
-        
+
         // 计算新的尺寸，保持宽高比
         float scale = Math.min(
-            (float) MAX_IMAGE_DIMENSION / originalWidth,
-            (float) MAX_IMAGE_DIMENSION / originalHeight
-        );
-        
-        int newWidth = Math.round(originalWidth * scale);
-        int newHeight = Math.round(originalHeight * scale);
-
-        // 创建缩放后的图片
-        java.awt.Image scaledImage = original.getScaledInstance(
-            newWidth,
-            newHeight,
-            java.awt.Image.SCALE_SMOOTH
+            (float) maxDimension / originalWidth,
+            (float) maxDimension / originalHeight
         );
 
-        // 转换为BufferedImage
-        BufferedImage result = new BufferedImage(
-            newWidth,
-            newHeight,
-            BufferedImage.TYPE_INT_RGB
-        );
-        result.getGraphics().drawImage(scaledImage, 0, 0, null);
-        
-        return result;
+        int newWidth = Math.max(1, Math.round(originalWidth * scale));
+        int newHeight = Math.max(1, Math.round(originalHeight * scale));
+
+        return scaler.scale(original, newWidth, newHeight);
+    }
+
+    /**
+     * 统计 PDDocument.load 读取的字节数，用于估算按目标大小压缩时的非图片部分
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * 单张图片的处理结果，encoded 为 null 表示保留原图
+     */
+    private record ImageOutcome(ImageDecision.Rule rule, EncodedImage encoded) {
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
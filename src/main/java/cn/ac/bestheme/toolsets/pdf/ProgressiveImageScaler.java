@@ -0,0 +1,180 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * 逐级减半的插值缩放。
+ * 目标尺寸不足当前尺寸一半时，先按 2×2 区域平均逐级减半（直接操作像素数组，既快又不产生混叠），
+ * 最后一步用双线性/双三次插值缩放到目标尺寸，缩放比例不超过一半，插值不会丢失细节。
+ * 中间结果写入每个线程复用的一对暂存图片，避免每一步都分配新的大块像素数组。
+ * 暂存图片由所有缩放器共用，换用其他图片类型时重新分配，每个线程长期持有的内存不超过 {@link #POOLED_BYTES_PER_THREAD}。
+ */
+class ProgressiveImageScaler implements ImageScaler {
+    // 单个暂存图片允许复用的最大像素数，超过时临时分配，避免工作线程长期持有过大的内存
+    private static final long MAX_POOLED_PIXELS = 512L * 1024;
+    // 每个线程的一对暂存图片最多占用的字节数（每像素最多 4 字节），不计入图片解码内存预算
+    static final long POOLED_BYTES_PER_THREAD = 2 * MAX_POOLED_PIXELS * 4;
+
+    private static final ThreadLocal<BufferedImage[]> SCRATCH = ThreadLocal.withInitial(() -> new BufferedImage[2]);
+
+    private final Object interpolation;
+
+    ProgressiveImageScaler(Object interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    @Override
+    public BufferedImage scale(BufferedImage source, int width, int height) {
+        int type = targetType(source);
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        int buffer = 0;
+
+        while (currentWidth / 2 >= width && currentHeight / 2 >= height) {
+            int nextWidth = currentWidth / 2;
+            int nextHeight = currentHeight / 2;
+            BufferedImage next = scratchImage(type, buffer, nextWidth, nextHeight);
+            if (!halve(current, nextWidth, nextHeight, next)) {
+                draw(current, currentWidth, currentHeight, next, nextWidth, nextHeight);
+            }
+            current = next;
+            currentWidth = nextWidth;
+            currentHeight = nextHeight;
+            buffer ^= 1;
+        }
+
+        BufferedImage result = new BufferedImage(width, height, type);
+        draw(current, currentWidth, currentHeight, result, width, height);
+        return result;
+    }
+
+    /**
+     * 把 source 左上角 sourceWidth×sourceHeight 的区域缩放绘制到 target 左上角 targetWidth×targetHeight 的区域
+     */
+    private void draw(BufferedImage source, int sourceWidth, int sourceHeight,
+                      BufferedImage target, int targetWidth, int targetHeight) {
+        BufferedImage region = source;
+        if (source.getWidth() != sourceWidth || source.getHeight() != sourceHeight) {
+            // 使用子图视图，插值只会采样到有效区域内的像素
+            region = source.getSubimage(0, 0, sourceWidth, sourceHeight);
+        }
+
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(region, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * 把 source 按 2×2 区域平均缩小到 target 左上角 width×height 的区域。
+     * 只处理与目标类型相同、像素数组布局简单的图片，其他情况返回 false 交给 Java2D 绘制。
+     */
+    private static boolean halve(BufferedImage source, int width, int height, BufferedImage target) {
+        if (source.getType() != target.getType()
+                || !(source.getRaster().getSampleModel() instanceof ComponentSampleModel
+                    || source.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel)
+                || source.getRaster().getParent() != null) {
+            return false;
+        }
+
+        int sourceStride = source.getWidth();
+        int targetStride = target.getWidth();
+        DataBuffer sourceBuffer = source.getRaster().getDataBuffer();
+        DataBuffer targetBuffer = target.getRaster().getDataBuffer();
+
+        if (sourceBuffer instanceof DataBufferInt && targetBuffer instanceof DataBufferInt) {
+            int[] src = ((DataBufferInt) sourceBuffer).getData();
+            int[] dst = ((DataBufferInt) targetBuffer).getData();
+            for (int y = 0; y < height; y++) {
+                int row0 = 2 * y * sourceStride;
+                int row1 = row0 + sourceStride;
+                int out = y * targetStride;
+                for (int x = 0; x < width; x++) {
+                    int p0 = src[row0 + 2 * x];
+                    int p1 = src[row0 + 2 * x + 1];
+                    int p2 = src[row1 + 2 * x];
+                    int p3 = src[row1 + 2 * x + 1];
+                    // 每个通道的和最多 10 位，按间隔 8 位打包后两组通道可以同时累加
+                    int rb = (((p0 & 0xff00ff) + (p1 & 0xff00ff) + (p2 & 0xff00ff) + (p3 & 0xff00ff)
+                            + 0x20002) >>> 2) & 0xff00ff;
+                    int ag = ((((p0 >>> 8) & 0xff00ff) + ((p1 >>> 8) & 0xff00ff) + ((p2 >>> 8) & 0xff00ff)
+                            + ((p3 >>> 8) & 0xff00ff) + 0x20002) >>> 2) & 0xff00ff;
+                    dst[out + x] = (ag << 8) | rb;
+                }
+            }
+            return true;
+        }
+
+        if (sourceBuffer instanceof DataBufferByte && targetBuffer instanceof DataBufferByte
+                && source.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            byte[] src = ((DataBufferByte) sourceBuffer).getData();
+            byte[] dst = ((DataBufferByte) targetBuffer).getData();
+            for (int y = 0; y < height; y++) {
+                int row0 = 2 * y * sourceStride;
+                int row1 = row0 + sourceStride;
+                int out = y * targetStride;
+                for (int x = 0; x < width; x++) {
+                    int sum = (src[row0 + 2 * x] & 0xff) + (src[row0 + 2 * x + 1] & 0xff)
+                            + (src[row1 + 2 * x] & 0xff) + (src[row1 + 2 * x + 1] & 0xff);
+                    dst[out + x] = (byte) ((sum + 2) >>> 2);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 返回至少 width×height 大小的暂存图片；类型不同或大小不足时重新分配，超过复用上限时不放回线程缓存
+     */
+    private static BufferedImage scratchImage(int type, int buffer, int width, int height) {
+        long pixels = (long) width * height;
+        if (pixels > MAX_POOLED_PIXELS) {
+            return new BufferedImage(width, height, type);
+        }
+
+        BufferedImage[] pool = SCRATCH.get();
+        BufferedImage image = pool[buffer];
+        if (image != null && image.getType() != type) {
+            image = null;
+        }
+        if (image == null || image.getWidth() < width || image.getHeight() < height) {
+            int pooledWidth = Math.max(width, image != null ? image.getWidth() : 0);
+            int pooledHeight = Math.max(height, image != null ? image.getHeight() : 0);
+            if ((long) pooledWidth * pooledHeight > MAX_POOLED_PIXELS) {
+                pooledWidth = width;
+                pooledHeight = height;
+            }
+            image = new BufferedImage(pooledWidth, pooledHeight, type);
+            pool[buffer] = image;
+        }
+        return image;
+    }
+
+    /**
+     * 缩放结果的图片类型：灰度图保持灰度，带透明通道的保持透明，其余统一为 RGB
+     */
+    static int targetType(BufferedImage source) {
+        if (source.getColorModel().hasAlpha()) {
+            return BufferedImage.TYPE_INT_ARGB;
+        }
+        if (source.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return BufferedImage.TYPE_BYTE_GRAY;
+        }
+        return BufferedImage.TYPE_INT_RGB;
+    }
+}
@@ -0,0 +1,116 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * 遍历页面用到的所有资源字典：页面资源，以及其中表单 XObject、平铺图案、Type3 字体的资源，
+ * 和注释外观流的资源，逐层向下直到没有新的资源字典。
+ * 已访问过的资源字典不会再次访问，被大量页面共用的表单只处理一次，循环引用也不会导致死循环。
+ * 同一个实例在整个文档的所有页面间共用。
+ */
+final class ResourceWalker {
+    private static final COSName PATTERN_TYPE = COSName.getPDFName("PatternType");
+    // 平铺图案，另一种着色图案没有资源字典
+    private static final int TILING_PATTERN = 1;
+
+    @FunctionalInterface
+    interface Visitor {
+        void visit(PDResources resources) throws IOException;
+    }
+
+    private final Set<COSDictionary> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * 依次访问页面及其注释中尚未访问过的资源字典
+     */
+    void walk(PDPage page, Visitor visitor) throws IOException {
+        Deque<COSDictionary> pending = new ArrayDeque<>();
+        PDResources pageResources = page.getResources();
+        if (pageResources != null) {
+            pending.add(pageResources.getCOSObject());
+        }
+        addAnnotationResources(page.getCOSObject(), pending);
+
+        while (!pending.isEmpty()) {
+            COSDictionary resources = pending.poll();
+            if (!visited.add(resources)) {
+                continue;
+            }
+            visitor.visit(new PDResources(resources));
+            addNestedResources(resources, COSName.XOBJECT,
+                    entry -> COSName.FORM.equals(entry.getCOSName(COSName.SUBTYPE)), pending);
+            addNestedResources(resources, COSName.PATTERN,
+                    entry -> entry.getInt(PATTERN_TYPE) == TILING_PATTERN, pending);
+            addNestedResources(resources, COSName.FONT,
+                    entry -> COSName.TYPE3.equals(entry.getCOSName(COSName.SUBTYPE)), pending);
+        }
+    }
+
+    /**
+     * 表单 XObject、平铺图案和 Type3 字体都有自己的资源字典
+     */
+    private static void addNestedResources(COSDictionary resources, COSName category,
+                                           Predicate<COSDictionary> hasResources, Deque<COSDictionary> pending) {
+        COSDictionary entries = resources.getCOSDictionary(category);
+        if (entries == null) {
+            return;
+        }
+        for (COSName name : entries.keySet()) {
+            if (entries.getDictionaryObject(name) instanceof COSDictionary entry && hasResources.test(entry)) {
+                addResources(entry, pending);
+            }
+        }
+    }
+
+    /**
+     * 注释的外观字典中，N、R、D 每项是外观流，或按状态名索引的一组外观流
+     */
+    private static void addAnnotationResources(COSDictionary page, Deque<COSDictionary> pending) {
+        if (!(page.getDictionaryObject(COSName.ANNOTS) instanceof COSArray annotations)) {
+            return;
+        }
+        for (int i = 0; i < annotations.size(); i++) {
+            if (!(annotations.getObject(i) instanceof COSDictionary annotation)
+                    || !(annotation.getDictionaryObject(COSName.AP) instanceof COSDictionary appearance)) {
+                continue;
+            }
+            for (COSBase entry : appearance.getValues()) {
+                COSBase value = resolve(entry);
+                if (value instanceof COSStream stream) {
+                    addResources(stream, pending);
+                } else if (value instanceof COSDictionary states) {
+                    for (COSBase state : states.getValues()) {
+                        if (resolve(state) instanceof COSStream stream) {
+                            addResources(stream, pending);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addResources(COSDictionary owner, Deque<COSDictionary> pending) {
+        if (owner.getDictionaryObject(COSName.RESOURCES) instanceof COSDictionary resources) {
+            pending.add(resources);
+        }
+    }
+
+    private static COSBase resolve(COSBase value) {
+        return value instanceof COSObject object ? object.getObject() : value;
+    }
+}
@@ -0,0 +1,25 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+/**
+ * 使用 {@link Image#getScaledInstance} 的区域平均缩放，保留用于对比和兼容旧的输出效果
+ */
+class SmoothImageScaler implements ImageScaler {
+
+    @Override
+    public BufferedImage scale(BufferedImage source, int width, int height) {
+        Image scaledImage = source.getScaledInstance(width, height, Image.SCALE_SMOOTH);
+
+        BufferedImage result = new BufferedImage(width, height, ProgressiveImageScaler.targetType(source));
+        Graphics2D g = result.createGraphics();
+        try {
+            g.drawImage(scaledImage, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+}
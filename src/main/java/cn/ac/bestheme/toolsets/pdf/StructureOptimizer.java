@@ -0,0 +1,527 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.jboss.logging.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 图片压缩之后、保存之前的结构优化：删除页面缩略图和过大的 XMP 元数据，
+ * 删除页面资源中内容流没有用到的 XObject 和字体，合并字节完全相同的字体和 ICC 配置流，
+ * 并以最高压缩级别重新压缩 Flate 流。节省的字节数按类别统计（按原流长度估算）。
+ */
+final class StructureOptimizer {
+    private static final Logger LOG = Logger.getLogger(StructureOptimizer.class);
+    // 超过该大小的文档级 XMP 元数据会被删除（声明了 PDF/A 的除外）
+    static final long MAX_METADATA_BYTES = 16 * 1024;
+
+    enum Category {
+        // 内容流没有用到的 XObject 和字体
+        UNUSED_RESOURCES,
+        // 重复的字体和 ICC 配置流
+        DUPLICATE_STREAMS,
+        // 页面缩略图
+        THUMBNAILS,
+        // 过大的 XMP 元数据
+        METADATA,
+        // 重新压缩的 Flate 流
+        FLATE_STREAMS
+    }
+
+    private static final Set<COSName> FONT_FILES = Set.of(COSName.FONT_FILE, COSName.FONT_FILE2, COSName.FONT_FILE3);
+    private static final COSName PATTERN_TYPE = COSName.getPDFName("PatternType");
+    // 平铺图案，另一种着色图案没有内容流
+    private static final int TILING_PATTERN = 1;
+
+    private final PDDocument document;
+    private final Map<Category, Long> saved = new EnumMap<>(Category.class);
+
+    private StructureOptimizer(PDDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * 优化文档结构，返回各类别节省的字节数
+     */
+    static Map<Category, Long> optimize(PDDocument document) throws IOException {
+        StructureOptimizer optimizer = new StructureOptimizer(document);
+        optimizer.removeThumbnails();
+        optimizer.removeLargeMetadata();
+        optimizer.pruneUnusedResources();
+
+        ReachableStreams reachable = optimizer.collectStreams();
+        optimizer.mergeDuplicateStreams(reachable);
+        optimizer.recompressFlateStreams(reachable);
+        return optimizer.saved;
+    }
+
+    private void record(Category category, long bytes) {
+        if (bytes > 0) {
+            saved.merge(category, bytes, Long::sum);
+        }
+    }
+
+    private void removeThumbnails() {
+        for (PDPage page : document.getPages()) {
+            COSDictionary dictionary = page.getCOSObject();
+            if (dictionary.getDictionaryObject(COSName.THUMB) instanceof COSStream thumbnail) {
+                record(Category.THUMBNAILS, thumbnail.getLength());
+            }
+            dictionary.removeItem(COSName.THUMB);
+        }
+    }
+
+    private void removeLargeMetadata() throws IOException {
+        COSDictionary catalog = document.getDocumentCatalog().getCOSObject();
+        if (!(catalog.getDictionaryObject(COSName.METADATA) instanceof COSStream metadata)
+                || metadata.getLength() <= MAX_METADATA_BYTES) {
+            return;
+        }
+        // PDF/A 要求保留 XMP 元数据
+        String xmp;
+        try (InputStream inputStream = metadata.createInputStream()) {
+            xmp = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if (xmp.contains("pdfaid")) {
+            return;
+        }
+        record(Category.METADATA, metadata.getLength());
+        catalog.removeItem(COSName.METADATA);
+    }
+
+    // ---------------------------------------------------------------- 未使用的资源
+
+    /**
+     * 多个页面可能共用同一个资源字典，先汇总所有共用页面用到的名称，再统一删除未用到的条目。
+     * 表单、平铺图案和注释外观流的 /Resources 可能就是页面的资源字典（同一个对象），
+     * 因此从页面内容出发扫描所有能到达的内容流，每个内容流用到的名称记入它实际使用的资源字典。
+     * 无法确定用到哪些名称时（内容流解析失败、Type3 字体的字形使用该资源字典）不处理该字典。
+     */
+    private void pruneUnusedResources() {
+        ResourceScan scan = new ResourceScan();
+        for (PDPage page : document.getPages()) {
+            PDResources resources = page.getResources();
+            if (resources != null) {
+                scan.usages.computeIfAbsent(resources.getCOSObject(), key -> new ResourceUsage());
+            }
+        }
+        for (PDPage page : document.getPages()) {
+            PDResources resources = page.getResources();
+            if (resources == null) {
+                continue;
+            }
+            scan.scanContent(page.getCOSObject().getDictionaryObject(COSName.CONTENTS), resources.getCOSObject());
+            scan.scanAnnotations(page, resources.getCOSObject());
+        }
+        if (scan.incomplete) {
+            return;
+        }
+
+        Set<COSStream> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<COSStream> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        scan.usages.forEach((resources, usage) -> {
+            if (usage.unsafe) {
+                return;
+            }
+            prune(resources.getCOSDictionary(COSName.XOBJECT), usage.xObjects, removed, kept);
+            prune(resources.getCOSDictionary(COSName.FONT), usage.fonts, removed, kept);
+        });
+        // 被删除的对象仍可能被保留的条目引用，只统计确实不再被这些资源字典引用的流
+        removed.removeAll(kept);
+        long bytes = 0;
+        for (COSStream stream : removed) {
+            bytes += stream.getLength();
+        }
+        record(Category.UNUSED_RESOURCES, bytes);
+    }
+
+    private void prune(COSDictionary names, Set<COSName> used, Set<COSStream> removed, Set<COSStream> kept) {
+        if (names == null) {
+            return;
+        }
+        for (COSName name : new ArrayList<>(names.keySet())) {
+            Set<COSStream> target = used.contains(name) ? kept : removed;
+            collectResourceStreams(names.getDictionaryObject(name), target);
+            if (!used.contains(name)) {
+                names.removeItem(name);
+            }
+        }
+    }
+
+    /**
+     * 资源条目占用的主要数据流：图片及其蒙版、表单的内容流、字体程序
+     */
+    private static void collectResourceStreams(COSBase value, Set<COSStream> target) {
+        if (value instanceof COSStream stream) {
+            target.add(stream);
+            if (stream.getDictionaryObject(COSName.SMASK) instanceof COSStream mask) {
+                target.add(mask);
+            }
+        } else if (value instanceof COSDictionary font) {
+            List<COSDictionary> fonts = new ArrayList<>();
+            fonts.add(font);
+            if (font.getDictionaryObject(COSName.DESCENDANT_FONTS) instanceof COSArray descendants
+                    && descendants.getObject(0) instanceof COSDictionary descendant) {
+                fonts.add(descendant);
+            }
+            for (COSDictionary dictionary : fonts) {
+                if (dictionary.getDictionaryObject(COSName.FONT_DESC) instanceof COSDictionary descriptor) {
+                    for (COSName key : FONT_FILES) {
+                        if (descriptor.getDictionaryObject(key) instanceof COSStream fontFile) {
+                            target.add(fontFile);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class ResourceUsage {
+        private final Set<COSName> xObjects = new HashSet<>();
+        private final Set<COSName> fonts = new HashSet<>();
+        private boolean unsafe;
+    }
+
+    /**
+     * 一次扫描的状态：各页面资源字典用到的名称，以及已扫描过的内容流。
+     * 同一个内容流在不同的资源字典下含义不同（没有自己资源的表单使用调用者的资源），按资源字典分别记录
+     */
+    private static final class ResourceScan {
+        private final Map<COSDictionary, ResourceUsage> usages = new IdentityHashMap<>();
+        private final Map<COSDictionary, Set<COSStream>> scanned = new IdentityHashMap<>();
+        private final Set<COSDictionary> nestedScanned = Collections.newSetFromMap(new IdentityHashMap<>());
+        // 不属于任何页面资源字典的内容流解析失败时，无法知道其中的表单用到了哪些名称，整个文档都不处理
+        private boolean incomplete;
+
+        void scanContent(COSBase contents, COSDictionary resources) {
+            if (contents instanceof COSStream stream) {
+                scanStream(stream, resources);
+            } else if (contents instanceof COSArray array) {
+                for (int i = 0; i < array.size(); i++) {
+                    if (array.getObject(i) instanceof COSStream stream) {
+                        scanStream(stream, resources);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 按 resources 解析内容流，记录 Do 和 Tf 用到的名称，并继续扫描其中调用的表单
+         */
+        private void scanStream(COSStream stream, COSDictionary resources) {
+            if (!scanned.computeIfAbsent(resources, key -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                    .add(stream)) {
+                return;
+            }
+            scanNestedResources(resources);
+            ResourceUsage usage = usages.get(resources);
+            List<COSStream> forms = new ArrayList<>();
+            try {
+                PDFStreamParser parser = new PDFStreamParser(new PDFormXObject(stream));
+                try {
+                    scanTokens(parser, resources, usage, forms);
+                } finally {
+                    parser.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("无法解析内容流，保留对应资源字典的全部资源", e);
+                if (usage != null) {
+                    usage.unsafe = true;
+                } else {
+                    incomplete = true;
+                }
+            }
+            for (COSStream form : forms) {
+                scanStream(form, ownResources(form, resources));
+            }
+        }
+
+        private void scanTokens(PDFStreamParser parser, COSDictionary resources, ResourceUsage usage,
+                                List<COSStream> forms) throws IOException {
+            List<Object> operands = new ArrayList<>();
+            for (Object token = parser.parseNextToken(); token != null; token = parser.parseNextToken()) {
+                if (!(token instanceof Operator operator)) {
+                    operands.add(token);
+                    continue;
+                }
+                if ("Do".equals(operator.getName()) && !operands.isEmpty()
+                        && operands.get(operands.size() - 1) instanceof COSName name) {
+                    if (usage != null) {
+                        usage.xObjects.add(name);
+                    }
+                    COSDictionary xObjects = resources.getCOSDictionary(COSName.XOBJECT);
+                    if (xObjects != null && xObjects.getDictionaryObject(name) instanceof COSStream form
+                            && COSName.FORM.equals(form.getCOSName(COSName.SUBTYPE))) {
+                        forms.add(form);
+                    }
+                } else if ("Tf".equals(operator.getName()) && !operands.isEmpty()
+                        && operands.get(0) instanceof COSName name && usage != null) {
+                    usage.fonts.add(name);
+                }
+                operands.clear();
+            }
+        }
+
+        /**
+         * 平铺图案按名称在 scn/SCN 中使用，这里不删除图案，只扫描资源字典中的全部平铺图案，
+         * 记录它们用到的名称；Type3 字体的字形使用某个页面资源字典时，该字典不处理
+         */
+        private void scanNestedResources(COSDictionary resources) {
+            if (!nestedScanned.add(resources)) {
+                return;
+            }
+            COSDictionary patterns = resources.getCOSDictionary(COSName.PATTERN);
+            if (patterns != null) {
+                for (COSName name : patterns.keySet()) {
+                    if (patterns.getDictionaryObject(name) instanceof COSStream pattern
+                            && pattern.getInt(PATTERN_TYPE) == TILING_PATTERN) {
+                        scanStream(pattern, ownResources(pattern, resources));
+                    }
+                }
+            }
+            COSDictionary fonts = resources.getCOSDictionary(COSName.FONT);
+            if (fonts != null) {
+                for (COSName name : fonts.keySet()) {
+                    if (fonts.getDictionaryObject(name) instanceof COSDictionary font
+                            && COSName.TYPE3.equals(font.getCOSName(COSName.SUBTYPE))) {
+                        ResourceUsage usage = usages.get(ownResources(font, resources));
+                        if (usage != null) {
+                            usage.unsafe = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 注释外观流有自己的资源字典时按其扫描，否则按页面资源扫描
+         */
+        void scanAnnotations(PDPage page, COSDictionary resources) {
+            if (!(page.getCOSObject().getDictionaryObject(COSName.ANNOTS) instanceof COSArray annotations)) {
+                return;
+            }
+            for (int i = 0; i < annotations.size(); i++) {
+                if (!(annotations.getObject(i) instanceof COSDictionary annotation)
+                        || !(annotation.getDictionaryObject(COSName.AP) instanceof COSDictionary appearance)) {
+                    continue;
+                }
+                for (COSBase entry : appearance.getValues()) {
+                    COSBase value = resolve(entry);
+                    if (value instanceof COSStream stream) {
+                        scanStream(stream, ownResources(stream, resources));
+                    } else if (value instanceof COSDictionary states) {
+                        for (COSBase state : states.getValues()) {
+                            if (resolve(state) instanceof COSStream stream) {
+                                scanStream(stream, ownResources(stream, resources));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 内容流自己的资源字典，没有时使用调用者的资源
+         */
+        private static COSDictionary ownResources(COSDictionary owner, COSDictionary inherited) {
+            return owner.getDictionaryObject(COSName.RESOURCES) instanceof COSDictionary own ? own : inherited;
+        }
+    }
+
+    // ---------------------------------------------------------------- 重复流与 Flate 重新压缩
+
+    /**
+     * 从文件尾字典出发遍历仍会被写入输出文件的对象，收集所有流，以及引用字体程序和 ICC 配置的位置
+     */
+    private ReachableStreams collectStreams() {
+        ReachableStreams reachable = new ReachableStreams();
+        Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<COSBase> pending = new ArrayDeque<>();
+        pending.push(document.getDocument().getTrailer());
+        while (!pending.isEmpty()) {
+            COSBase current = pending.pop();
+            if (!visited.add(current)) {
+                continue;
+            }
+            if (current instanceof COSStream stream) {
+                reachable.streams.add(stream);
+            }
+            if (current instanceof COSDictionary dictionary) {
+                for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+                    COSBase value = resolve(entry.getValue());
+                    if (value instanceof COSStream stream
+                            && (FONT_FILES.contains(entry.getKey()) || COSName.DEST_OUTPUT_PROFILE.equals(entry.getKey()))) {
+                        reachable.shared.add(new StreamReference(dictionary, entry.getKey(), -1, stream));
+                    }
+                    if (value != null) {
+                        pending.push(value);
+                    }
+                }
+            } else if (current instanceof COSArray array) {
+                boolean iccBased = array.size() == 2 && COSName.ICCBASED.equals(array.getObject(0));
+                for (int i = 0; i < array.size(); i++) {
+                    COSBase value = resolve(array.get(i));
+                    if (iccBased && i == 1 && value instanceof COSStream stream) {
+                        reachable.shared.add(new StreamReference(array, null, i, stream));
+                    }
+                    if (value != null) {
+                        pending.push(value);
+                    }
+                }
+            }
+        }
+        return reachable;
+    }
+
+    private static COSBase resolve(COSBase value) {
+        return value instanceof COSObject object ? object.getObject() : value;
+    }
+
+    /**
+     * 内容（原始字节和除 Length 外的字典项）完全相同的字体程序或 ICC 配置只保留一份
+     */
+    private void mergeDuplicateStreams(ReachableStreams reachable) throws IOException {
+        Map<String, COSStream> canonical = new HashMap<>();
+        Map<COSStream, String> keys = new IdentityHashMap<>();
+        Set<COSStream> merged = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (StreamReference reference : reachable.shared) {
+            String key = keys.get(reference.stream());
+            if (key == null) {
+                key = contentKey(reference.stream());
+                keys.put(reference.stream(), key);
+            }
+            COSStream first = canonical.putIfAbsent(key, reference.stream());
+            if (first == null || first == reference.stream()) {
+                continue;
+            }
+            if (reference.parent() instanceof COSDictionary dictionary) {
+                dictionary.setItem(reference.key(), first);
+            } else {
+                ((COSArray) reference.parent()).set(reference.index(), first);
+            }
+            if (merged.add(reference.stream())) {
+                record(Category.DUPLICATE_STREAMS, reference.stream().getLength());
+            }
+        }
+        reachable.streams.removeAll(merged);
+    }
+
+    private static String contentKey(COSStream stream) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        try (InputStream inputStream = stream.createRawInputStream()) {
+            for (int read; (read = inputStream.read(buffer)) != -1; ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        Map<String, String> entries = new TreeMap<>();
+        for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+            if (!COSName.LENGTH.equals(entry.getKey())) {
+                entries.put(entry.getKey().getName(), String.valueOf(entry.getValue()));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest()) + entries;
+    }
+
+    /**
+     * 以最高级别重新压缩未压缩或只用 Flate 压缩、且没有预测器参数的流，变小时才替换。
+     * 图片由图片压缩阶段处理，XMP 元数据按惯例保持不压缩，均跳过。
+     */
+    private void recompressFlateStreams(ReachableStreams reachable) {
+        for (COSStream stream : reachable.streams) {
+            if (COSName.IMAGE.equals(stream.getCOSName(COSName.SUBTYPE))
+                    || COSName.METADATA.equals(stream.getCOSName(COSName.TYPE))
+                    || stream.getDictionaryObject(COSName.DECODE_PARMS, COSName.DP) != null
+                    || !isFlateOrUnfiltered(stream.getFilters())) {
+                continue;
+            }
+            try {
+                long before = stream.getLength();
+                byte[] data;
+                try (InputStream inputStream = stream.createInputStream()) {
+                    data = inputStream.readAllBytes();
+                }
+                byte[] deflated = deflate(data);
+                if (deflated.length >= before) {
+                    continue;
+                }
+                try (OutputStream outputStream = stream.createRawOutputStream()) {
+                    outputStream.write(deflated);
+                }
+                stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+                record(Category.FLATE_STREAMS, before - deflated.length);
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("重新压缩数据流失败，保留原数据", e);
+            }
+        }
+    }
+
+    private static boolean isFlateOrUnfiltered(COSBase filters) {
+        if (filters == null) {
+            return true;
+        }
+        if (filters instanceof COSArray array) {
+            return array.size() == 0 || (array.size() == 1 && COSName.FLATE_DECODE.equals(array.getObject(0)));
+        }
+        return COSName.FLATE_DECODE.equals(filters);
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(32, data.length / 2));
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(outputStream, deflater)) {
+            deflaterStream.write(data);
+        } finally {
+            deflater.end();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static final class ReachableStreams {
+        private final Set<COSStream> streams = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final List<StreamReference> shared = new ArrayList<>();
+    }
+
+    /**
+     * 对字体程序或 ICC 配置流的一处引用：字典中的键，或数组中的下标
+     */
+    private record StreamReference(COSBase parent, COSName key, int index, COSStream stream) {
+    }
+}
@@ -0,0 +1,84 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.io.IOException;
+
+/**
+ * 按输出尺寸解码图片，使解码的峰值内存和耗时随输出尺寸而不是原图尺寸增长。
+ * 需要缩小的图片先按整数倍抽样解码：PDFBox 逐行读取采样时跳过不需要的行和列，JPEG 由 ImageIO 直接按抽样读取，
+ * 不会生成原图尺寸的 BufferedImage。抽样后的长边仍不小于目标边长，最后一步缩放交给配置的缩放算法，保证画质。
+ * 抽样后仍然很大的图片按水平条带分段解码并拼接，PDFBox 颜色转换产生的中间图片只有条带大小。
+ * 条带的起始行都是抽样倍数的整数倍，PDFBox 按整幅图片的行号抽样，拼接结果与整体抽样解码完全相同。
+ * 代价是耗时：PDFBox 2.0 每解码一个条带都要从头解压整个数据流，再跳过条带以外的行，
+ * 解码耗时约为条带数乘以整幅图片的解压时间，因此条带数不超过 {@link #MAX_STRIPS}，
+ * 超出时加大条带，用略高的峰值内存换取有上限的耗时。
+ */
+final class SubsampledDecoder {
+    // 每个条带都要从头解压整个数据流，条带数即解压次数的上限
+    static final int MAX_STRIPS = 4;
+
+    private SubsampledDecoder() {
+    }
+
+    /**
+     * 缩小到 maxDimension 以内时可用的最大抽样倍数：抽样后长边仍不小于 maxDimension，不需要缩小时为 1
+     */
+    static int subsampling(int width, int height, int maxDimension) {
+        if (maxDimension <= 0) {
+            return 1;
+        }
+        return Math.max(1, Math.max(width, height) / maxDimension);
+    }
+
+    /**
+     * 按抽样倍数解码后的边长
+     */
+    static int subsampledSize(int size, int subsampling) {
+        return (size + subsampling - 1) / subsampling;
+    }
+
+    /**
+     * 按抽样倍数解码图片，抽样后的像素数超过 stripPixels 时按条带分段解码。以下情况整体解码：
+     * 不抽样时 PDFBox 2.0 按整幅图片的行号写入 8 位图片的条带，截取区域不从第一行开始时会越界；
+     * 带蒙版的图片，蒙版的尺寸可能与图片不同，无法按图片坐标截取同一条带；
+     * JPEG（DCTDecode）图片，ImageIO 一次读取时已直接按抽样解码，不产生原图尺寸的中间图片，分段反而要多次从头解码
+     */
+    static BufferedImage decode(PDImageXObject image, int subsampling, long stripPixels) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int outputWidth = subsampledSize(width, subsampling);
+        int outputHeight = subsampledSize(height, subsampling);
+        if ((long) outputWidth * outputHeight <= stripPixels || subsampling == 1
+                || image.getSoftMask() != null || image.getMask() != null
+                || image.getStream().getFilters().contains(COSName.DCT_DECODE)) {
+            return image.getImage(null, subsampling);
+        }
+
+        int stripRows = stripRows(height, outputWidth, outputHeight, subsampling, stripPixels);
+        BufferedImage result = null;
+        for (int y = 0; y < height; y += stripRows) {
+            BufferedImage strip = image.getImage(new Rectangle(0, y, width, Math.min(stripRows, height - y)), subsampling);
+            if (result == null) {
+                ColorModel colorModel = strip.getColorModel();
+                result = new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(outputWidth, outputHeight),
+                        colorModel.isAlphaPremultiplied(), null);
+            }
+            result.getRaster().setRect(0, y / subsampling, strip.getRaster());
+        }
+        return result;
+    }
+
+    /**
+     * 每个条带在原图中的行数：抽样倍数的整数倍，各条带抽样后在输出图片中首尾相接；
+     * 抽样后的像素数尽量不超过 stripPixels，但条带数不超过 {@link #MAX_STRIPS}
+     */
+    static int stripRows(int height, int outputWidth, int outputHeight, int subsampling, long stripPixels) {
+        long outputRows = Math.max(Math.max(1, stripPixels / outputWidth), (outputHeight + MAX_STRIPS - 1) / MAX_STRIPS);
+        return (int) Math.min(height, outputRows * subsampling);
+    }
+}
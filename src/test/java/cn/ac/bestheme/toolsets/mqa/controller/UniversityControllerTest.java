@@ -0,0 +1,72 @@
+package cn.ac.bestheme.toolsets.mqa.controller;
+
+import cn.ac.bestheme.toolsets.mqa.service.MqaRefresher;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.response.Response;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试中的采集由 FakeMqaCrawler 完成，快照只保存在内存中，应用启动时没有快照
+ */
+@QuarkusTest
+public class UniversityControllerTest {
+
+    @Inject
+    MqaRefresher refresher;
+
+    @Test
+    public void testSnapshotServedAfterFirstCrawl() throws Exception {
+        // 尚未完成过采集：返回 503 并在后台开始采集
+        given()
+            .when()
+            .get("/api/universities")
+            .then()
+            .statusCode(503)
+            .header("Retry-After", "60")
+            .body(containsString("首次采集"));
+
+        // 等待后台采集完成（已结束时重新采集一次）
+        assertTrue(refresher.refresh().get(10, TimeUnit.SECONDS));
+
+        Response response = given()
+            .when()
+            .get("/api/universities")
+            .then()
+            .statusCode(200)
+            .header("Last-Modified", notNullValue())
+            .body("[0].id", equalTo("1"))
+            .extract()
+            .response();
+        String age = response.getHeader("X-Snapshot-Age");
+        assertNotNull(age);
+        assertTrue(Long.parseLong(age) >= 0, "X-Snapshot-Age: " + age);
+
+        // 快照没有变化时不重新下载
+        given()
+            .header("If-Modified-Since", response.getHeader("Last-Modified"))
+            .when()
+            .get("/api/universities")
+            .then()
+            .statusCode(304);
+
+        given()
+            .when()
+            .get("/api/universities/status")
+            .then()
+            .statusCode(200)
+            .body("state", equalTo("IDLE"))
+            .body("last_result", equalTo("COMPLETED"))
+            .body("universities", equalTo(1))
+            .body("snapshot_crawled_at", notNullValue());
+    }
+}
@@ -0,0 +1,56 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import cn.ac.bestheme.toolsets.mqa.model.University;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Alternative;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试中替代 {@link MqaCrawler}，不访问 MQA 网站：每次采集得到同一所大学并保存为快照。
+ * {@link #hold()} 之后开始的采集停在中途，直到测试放行
+ */
+@Alternative
+@Priority(1)
+@ApplicationScoped
+public class FakeMqaCrawler extends MqaCrawler {
+    private final AtomicInteger crawls = new AtomicInteger();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    @Override
+    public boolean crawl(UniversitySink sink) throws IOException {
+        crawls.incrementAndGet();
+        try {
+            gate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("采集被中断");
+        }
+        University university = new University("1", "Universiti Contoh", "Selangor", "");
+        sink.accept(university);
+        snapshots.save(new MqaSnapshot(Instant.now(), List.of(university)));
+        return true;
+    }
+
+    /**
+     * 之后开始的采集等待返回的 latch 放行
+     */
+    CountDownLatch hold() {
+        CountDownLatch latch = new CountDownLatch(1);
+        gate = latch;
+        return latch;
+    }
+
+    /**
+     * 已开始的采集次数
+     */
+    int crawls() {
+        return crawls.get();
+    }
+}
@@ -0,0 +1,81 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HostThrottleTest {
+
+    @Test
+    public void testConcurrencyLimited() throws Exception {
+        // 不限频率，只限制同时进行的请求数
+        HostThrottle throttle = new HostThrottle(3, 0);
+        Requests requests = run(throttle, 8, 200);
+        assertEquals(3, requests.maxInFlight.get());
+    }
+
+    @Test
+    public void testRequestsSpaced() throws Exception {
+        // 每秒 20 个请求，相邻请求的开始时间至少间隔 50ms
+        HostThrottle throttle = new HostThrottle(2, 20);
+        long interval = TimeUnit.MILLISECONDS.toNanos(50);
+        long begin = System.nanoTime();
+        Requests requests = run(throttle, 6, 100);
+
+        assertTrue(requests.maxInFlight.get() <= 2, "同时进行的请求数: " + requests.maxInFlight.get());
+        List<Long> starts = requests.starts;
+        starts.sort(null);
+        for (int i = 0; i < starts.size(); i++) {
+            // 第 i 个请求的发送时间不早于第 i 个时间段的开始
+            long earliest = begin + i * interval;
+            assertTrue(starts.get(i) >= earliest, "第 " + i + " 个请求提前了 " + (earliest - starts.get(i)) + " 纳秒");
+        }
+    }
+
+    /**
+     * 在 count 个虚拟线程中各发一个持续 holdMillis 的请求，记录开始时间和同时进行的最大请求数
+     */
+    private static Requests run(HostThrottle throttle, int count, long holdMillis) throws Exception {
+        Requests requests = new Requests();
+        AtomicInteger inFlight = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                futures.add(executor.submit(() -> {
+                    throttle.acquire();
+                    try {
+                        long start = System.nanoTime();
+                        requests.maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        synchronized (requests.starts) {
+                            requests.starts.add(start);
+                        }
+                        Thread.sleep(holdMillis);
+                        inFlight.decrementAndGet();
+                    } finally {
+                        throttle.release();
+                    }
+                    return null;
+                }));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        assertEquals(count, requests.starts.size());
+        return requests;
+    }
+
+    private static final class Requests {
+        final List<Long> starts = new ArrayList<>();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+    }
+}
@@ -0,0 +1,35 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Alternative;
+
+/**
+ * 测试中替代 {@link MqaSnapshotStore}：快照只保存在内存中，不读写快照文件，每次启动都没有上次的采集结果
+ */
+@Alternative
+@Priority(1)
+@ApplicationScoped
+public class InMemorySnapshotStore extends MqaSnapshotStore {
+    private volatile ProgramIndex index;
+
+    @Override
+    void init() {
+    }
+
+    @Override
+    public MqaSnapshot current() {
+        ProgramIndex current = index;
+        return current != null ? current.snapshot() : null;
+    }
+
+    @Override
+    ProgramIndex index() {
+        return index;
+    }
+
+    @Override
+    public void save(MqaSnapshot snapshot) {
+        index = ProgramIndex.build(snapshot);
+    }
+}
@@ -0,0 +1,210 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import cn.ac.bestheme.toolsets.mqa.model.Program;
+import cn.ac.bestheme.toolsets.mqa.model.University;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MqaCrawlerTest {
+
+    private static final Duration DAY = Duration.ofDays(1);
+
+    @Test
+    public void testIncrementalCrawl() throws IOException {
+        Instant now = Instant.now();
+        University known = new University("1", "Universiti Contoh", "Selangor", "");
+        known.setPrograms(new ArrayList<>(List.of(
+            // 表格中的信息没有变化、详情未过期：沿用上次的详情
+            program("11", "Bachelor of Computing", "Bachelor", now.minus(DAY), null),
+            // 表格中的类型有变化
+            program("12", "Diploma in Accounting", "Diploma", now.minus(DAY), null),
+            // 详情已过期
+            program("13", "Master of Data Science", "Master", now.minus(DAY.multipliedBy(40)), null),
+            // 上次还在表格中，这次不在
+            program("14", "Bachelor of Arts", "Bachelor", now.minus(DAY), null),
+            // 标记删除已超过保留期限
+            program("15", "Diploma in Music", "Diploma", now.minus(DAY.multipliedBy(400)), now.minus(DAY.multipliedBy(200))),
+            // 重新出现在表格中
+            program("16", "Bachelor of Law", "Bachelor", now.minus(DAY), now.minus(DAY.multipliedBy(10))),
+            // 标记删除未超过保留期限
+            program("18", "Diploma in Design", "Diploma", now.minus(DAY), now.minus(DAY.multipliedBy(10))))));
+        MemorySnapshotStore snapshots = new MemorySnapshotStore();
+        snapshots.snapshot = new MqaSnapshot(now.minus(DAY), List.of(known));
+
+        FakeFetcher fetcher = new FakeFetcher(
+            row("11", "Bachelor of Computing", "Bachelor"),
+            row("12", "Diploma in Accounting", "Advanced Diploma"),
+            row("13", "Master of Data Science", "Master"),
+            row("16", "Bachelor of Law", "Bachelor"),
+            row("17", "Bachelor of Nursing", "Bachelor"));
+        MqaCrawler crawler = new MqaCrawler();
+        crawler.fetcher = fetcher;
+        crawler.snapshots = snapshots;
+        crawler.programStaleness = DAY.multipliedBy(30);
+        crawler.removedRetention = DAY.multipliedBy(180);
+
+        List<University> emitted = new ArrayList<>();
+        assertTrue(crawler.crawl(emitted::add));
+
+        assertEquals(1, emitted.size());
+        University university = snapshots.snapshot.universities().get(0);
+        assertSame(emitted.get(0), university);
+        assertEquals("Jalan Contoh 1", university.getAddress());
+        // 表格中的课程按表格顺序，之后是已删除的课程；超过保留期限的课程被去掉
+        List<String> ids = university.getPrograms().stream().map(Program::getId).toList();
+        assertEquals(List.of("11", "12", "13", "16", "17", "14", "18"), ids);
+        assertEquals(new TreeSet<>(Set.of("12", "13", "16", "17")), new TreeSet<>(fetcher.fetchedPrograms));
+
+        Map<String, Program> programs = university.getPrograms().stream()
+            .collect(Collectors.toMap(Program::getId, Function.identity()));
+        assertEquals("Old", programs.get("11").getDetails().getModeOfStudy());
+        assertEquals(now.minus(DAY), programs.get("11").getDetailsFetchedAt());
+        assertEquals("Advanced Diploma", programs.get("12").getType());
+        assertEquals("Full Time", programs.get("12").getDetails().getModeOfStudy());
+        assertEquals("Full Time", programs.get("13").getDetails().getModeOfStudy());
+        assertTrue(programs.get("13").getDetailsFetchedAt().isAfter(now.minus(DAY)));
+        assertNull(programs.get("16").getRemovedAt());
+        assertEquals("Full Time", programs.get("17").getDetails().getModeOfStudy());
+        assertTrue(programs.get("14").isRemoved());
+        assertEquals("Old", programs.get("14").getDetails().getModeOfStudy());
+        assertEquals(now.minus(DAY.multipliedBy(10)), programs.get("18").getRemovedAt());
+        // 上次的快照不被修改
+        assertNull(known.getPrograms().get(3).getRemovedAt());
+    }
+
+    @Test
+    public void testUniversityMissingFromListing() throws IOException {
+        Instant now = Instant.now();
+        University listed = new University("1", "Universiti Contoh", "Selangor", "");
+        listed.setPrograms(new ArrayList<>(List.of(
+            program("11", "Bachelor of Computing", "Bachelor", now.minus(DAY), null))));
+        // 不再出现在列表中的大学
+        University closed = new University("2", "Kolej Lama", "Johor", "");
+        closed.setAddress("Jalan Lama 2");
+        closed.setPrograms(new ArrayList<>(List.of(
+            program("21", "Diploma in Business", "Diploma", now.minus(DAY), null),
+            program("22", "Diploma in Music", "Diploma", now.minus(DAY.multipliedBy(400)), now.minus(DAY.multipliedBy(200))),
+            program("23", "Diploma in Design", "Diploma", now.minus(DAY), now.minus(DAY.multipliedBy(10))))));
+        // 不再出现在列表中、课程都已超过保留期限的大学
+        University expired = new University("3", "Kolej Tutup", "Perak", "");
+        expired.setPrograms(new ArrayList<>(List.of(
+            program("31", "Diploma in Art", "Diploma", now.minus(DAY.multipliedBy(400)), now.minus(DAY.multipliedBy(200))))));
+        MemorySnapshotStore snapshots = new MemorySnapshotStore();
+        snapshots.snapshot = new MqaSnapshot(now.minus(DAY), List.of(listed, closed, expired));
+
+        MqaCrawler crawler = new MqaCrawler();
+        crawler.fetcher = new FakeFetcher(row("11", "Bachelor of Computing", "Bachelor"));
+        crawler.snapshots = snapshots;
+        crawler.programStaleness = DAY.multipliedBy(30);
+        crawler.removedRetention = DAY.multipliedBy(180);
+
+        List<University> emitted = new ArrayList<>();
+        assertTrue(crawler.crawl(emitted::add));
+
+        List<University> universities = snapshots.snapshot.universities();
+        assertEquals(List.of("1", "2"), universities.stream().map(University::getId).toList());
+        assertEquals(universities, emitted);
+        University carried = universities.get(1);
+        assertEquals("Kolej Lama", carried.getName());
+        assertEquals("Jalan Lama 2", carried.getAddress());
+        Map<String, Program> programs = carried.getPrograms().stream()
+            .collect(Collectors.toMap(Program::getId, Function.identity()));
+        assertEquals(Set.of("21", "23"), programs.keySet());
+        assertTrue(programs.get("21").isRemoved());
+        assertEquals("Old", programs.get("21").getDetails().getModeOfStudy());
+        assertEquals(now.minus(DAY.multipliedBy(10)), programs.get("23").getRemovedAt());
+        // 上次的快照不被修改
+        assertNull(closed.getPrograms().get(0).getRemovedAt());
+
+        // 下一次采集时仍不在列表中：已标记的删除时间不变，超过保留期限后整所大学不再保留
+        Instant removedAt = programs.get("21").getRemovedAt();
+        assertTrue(crawler.crawl(university -> { }));
+        assertEquals(removedAt, snapshots.snapshot.universities().get(1).getPrograms().get(0).getRemovedAt());
+        crawler.removedRetention = Duration.ofNanos(1);
+        assertTrue(crawler.crawl(university -> { }));
+        assertEquals(List.of("1"), snapshots.snapshot.universities().stream().map(University::getId).toList());
+    }
+
+    private static Program program(String id, String name, String type, Instant fetchedAt, Instant removedAt) {
+        Program program = new Program(id, "R" + id, name, type, "Level 6", "Computing");
+        program.getDetails().setModeOfStudy("Old");
+        program.setDetailsFetchedAt(fetchedAt);
+        program.setRemovedAt(removedAt);
+        return program;
+    }
+
+    private static String row(String id, String name, String type) {
+        return "<tr><td>" + id + "</td><td><a href=\"epapar.cfm?NoRujA=R" + id + "&IdAkrKP=" + id + "\">" + name
+            + "</a></td><td>" + type + "</td><td>Level 6</td><td>Computing</td><td></td></tr>";
+    }
+
+    /**
+     * 只有一所大学的网站：列表页、大学详情页（课程表格由参数给出）和统一内容的课程详情页
+     */
+    private static final class FakeFetcher extends MqaFetcher {
+        private final String programRows;
+        private final Set<String> fetchedPrograms = ConcurrentHashMap.newKeySet();
+
+        FakeFetcher(String... programRows) {
+            this.programRows = String.join("", programRows);
+        }
+
+        @Override
+        public Document get(String url) throws IOException {
+            if (url.equals(MqaPageParser.BASE_URL)) {
+                return Jsoup.parse("<table border=\"2\" width=\"661\" bordercolor=\"#80000\">"
+                    + "<tr><td>NO</td><td>IPTS NAME</td><td>STATE</td></tr>"
+                    + "<tr><td>1</td><td><a href=\"eakrKPList.cfm?IDAkrIPTS=1\">Universiti Contoh</a></td>"
+                    + "<td>Selangor</td></tr></table>");
+            }
+            if (url.contains("IDAkrIPTS=1")) {
+                String programTable = "<table border=\"1\" width=\"100%\" bordercolor=\"80000\" "
+                    + "style=\"border-collapse: collapse\" cellpadding=\"0\">";
+                return Jsoup.parse("<table border=\"1\" width=\"100%\" bordercolor=\"80000\" cellspacing=\"0\" cellpadding=\"0\">"
+                    + "<tr><td>Address</td><td>:</td><td>Jalan Contoh 1</td></tr></table>"
+                    + programTable + "<tr><td>Header</td></tr></table>"
+                    + programTable + programRows + "</table>");
+            }
+            if (url.contains("IdAkrKP=")) {
+                fetchedPrograms.add(url.substring(url.indexOf("IdAkrKP=") + 8));
+                return Jsoup.parse("<table><tr><td>Mode of Study</td><td>:</td><td>Full Time</td></tr></table>");
+            }
+            throw new IOException("未知页面: " + url);
+        }
+    }
+
+    /**
+     * 只在内存中保存快照
+     */
+    private static final class MemorySnapshotStore extends MqaSnapshotStore {
+        private MqaSnapshot snapshot;
+
+        @Override
+        public MqaSnapshot current() {
+            return snapshot;
+        }
+
+        @Override
+        public void save(MqaSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MqaFetcherTest {
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    private String url;
+    // 服务器上页面的当前版本，ETag 为 "v<版本>"
+    private volatile int version = 1;
+    // 每个请求带来的 If-None-Match，没有时为 null
+    private final List<String> validators = new ArrayList<>();
+
+    private PageCache cache;
+    private SimpleMeterRegistry registry;
+    private MqaFetcher fetcher;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/page", this::handle);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/page";
+
+        cache = new PageCache();
+        cache.enabled = true;
+        cache.ttl = Duration.ofHours(12);
+        cache.directory = Optional.of(directory.toString());
+        cache.init();
+
+        registry = new SimpleMeterRegistry();
+        fetcher = new MqaFetcher();
+        fetcher.maxConcurrencyPerHost = 4;
+        fetcher.requestsPerSecond = 0;
+        fetcher.timeout = Duration.ofSeconds(5);
+        fetcher.cache = cache;
+        fetcher.registry = registry;
+        fetcher.init();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testFreshRevalidatedAndDownloaded() throws IOException {
+        // 没有缓存：下载并保存
+        assertEquals("version 1", fetcher.get(url).text());
+        assertEquals(1, validators.size());
+        assertNull(validators.get(0));
+        assertEquals(1, count("downloaded"));
+        assertEquals("\"v1\"", cache.get(url).etag());
+
+        // 有效期内：不发请求
+        assertEquals("version 1", fetcher.get(url).text());
+        assertEquals(1, validators.size());
+        assertEquals(1, count("fresh"));
+
+        // 过期后带 ETag 发条件请求，页面未修改时返回 304，沿用缓存的内容并更新获取时间
+        Instant firstFetch = cache.get(url).fetchedAt();
+        cache.ttl = Duration.ZERO;
+        Document revalidated = fetcher.get(url);
+        assertEquals("version 1", revalidated.text());
+        assertEquals(2, validators.size());
+        assertEquals("\"v1\"", validators.get(1));
+        assertEquals(1, count("not-modified"));
+        assertFalse(cache.get(url).fetchedAt().isBefore(firstFetch));
+
+        // 页面已修改：条件请求得到 200 和新内容，缓存随之更新
+        version = 2;
+        assertEquals("version 2", fetcher.get(url).text());
+        assertEquals("\"v1\"", validators.get(2));
+        assertEquals(2, count("downloaded"));
+        assertEquals("\"v2\"", cache.get(url).etag());
+        assertEquals("version 2", cache.get(url).parse().text());
+    }
+
+    private double count(String result) {
+        return registry.get("mqa.fetch.requests").tag("result", result).counter().count();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String etag = "\"v" + version + "\"";
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        synchronized (validators) {
+            validators.add(ifNoneMatch);
+        }
+        try (exchange) {
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = ("<html><body><p>version " + version + "</p></body></html>").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MqaRefresherTest {
+
+    @Test
+    public void testConcurrentRefreshesShareOneCrawl() throws Exception {
+        InMemorySnapshotStore snapshots = new InMemorySnapshotStore();
+        FakeMqaCrawler crawler = new FakeMqaCrawler();
+        crawler.snapshots = snapshots;
+        MqaRefresher refresher = new MqaRefresher();
+        refresher.crawler = crawler;
+        refresher.snapshots = snapshots;
+        refresher.registry = new SimpleMeterRegistry();
+        refresher.init();
+
+        CountDownLatch gate = crawler.hold();
+        List<Future<CompletableFuture<Boolean>>> calls = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                calls.add(executor.submit(refresher::refresh));
+            }
+        }
+        CompletableFuture<Boolean> first = calls.get(0).get();
+        for (Future<CompletableFuture<Boolean>> call : calls) {
+            assertSame(first, call.get());
+        }
+        assertTrue(refresher.isRunning());
+        assertEquals(MqaRefreshStatus.State.RUNNING, refresher.status().state());
+        // 采集完成前接口仍读取原来的快照（这里还没有快照）
+        assertNull(snapshots.current());
+
+        gate.countDown();
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+        assertEquals(1, crawler.crawls());
+        assertFalse(refresher.isRunning());
+        MqaRefreshStatus status = refresher.status();
+        assertEquals(MqaRefreshStatus.State.IDLE, status.state());
+        assertEquals(MqaRefreshStatus.Result.COMPLETED, status.lastResult());
+        assertEquals(1, status.universities());
+        assertEquals("1", snapshots.current().universities().get(0).getId());
+
+        // 上一次结束后再刷新时开始新的采集
+        CompletableFuture<Boolean> second = refresher.refresh();
+        assertNotSame(first, second);
+        assertTrue(second.get(10, TimeUnit.SECONDS));
+        assertEquals(2, crawler.crawls());
+    }
+}
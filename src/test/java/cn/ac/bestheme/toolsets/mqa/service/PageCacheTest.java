@@ -0,0 +1,90 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PageCacheTest {
+
+    private static final String URL = "https://www2.mqa.gov.my/mqr/english/eakrKPList.cfm?IDAkrIPTS=1";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRoundTrip() {
+        PageCache cache = cache(Duration.ofHours(12));
+        Instant fetchedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        byte[] body = "<p>Universiti Contoh</p>".getBytes(StandardCharsets.UTF_8);
+        cache.put(new PageCache.Entry(URL, "\"v1\"", "Wed, 01 May 2024 03:00:00 GMT", fetchedAt, "UTF-8", body));
+
+        // 重启后（新的实例、同一目录）仍能读到
+        PageCache.Entry entry = cache(Duration.ofHours(12)).get(URL);
+        assertEquals(URL, entry.url());
+        assertEquals("\"v1\"", entry.etag());
+        assertEquals("Wed, 01 May 2024 03:00:00 GMT", entry.lastModified());
+        assertEquals(fetchedAt, entry.fetchedAt());
+        assertEquals("UTF-8", entry.charset());
+        assertArrayEquals(body, entry.body());
+        assertTrue(entry.hasValidator());
+
+        assertNull(cache.get(URL + "&page=2"));
+    }
+
+    @Test
+    public void testOptionalFieldsKept() {
+        PageCache cache = cache(Duration.ofHours(12));
+        cache.put(new PageCache.Entry(URL, null, null, Instant.now(), null, new byte[0]));
+
+        PageCache.Entry entry = cache.get(URL);
+        assertNull(entry.etag());
+        assertNull(entry.lastModified());
+        assertNull(entry.charset());
+        assertFalse(entry.hasValidator());
+    }
+
+    @Test
+    public void testDamagedFileIgnored() throws IOException {
+        PageCache cache = cache(Duration.ofHours(12));
+        cache.put(new PageCache.Entry(URL, "\"v1\"", null, Instant.now(), "UTF-8", new byte[100]));
+        try (Stream<Path> files = Files.list(directory)) {
+            Path file = files.findFirst().orElseThrow();
+            Files.write(file, new byte[] {0, 0, 0, 1, 0});
+        }
+        assertNull(cache.get(URL));
+    }
+
+    @Test
+    public void testFreshness() {
+        Instant now = Instant.now();
+        PageCache.Entry entry = new PageCache.Entry(URL, "\"v1\"", null, now.minus(Duration.ofHours(1)), null, new byte[0]);
+        assertTrue(cache(Duration.ofHours(12)).isFresh(entry, now));
+        assertFalse(cache(Duration.ofMinutes(30)).isFresh(entry, now));
+        // 有效期为 0 时每次都验证
+        assertFalse(cache(Duration.ZERO).isFresh(entry.revalidatedAt(now), now));
+    }
+
+    private PageCache cache(Duration ttl) {
+        PageCache cache = new PageCache();
+        cache.enabled = true;
+        cache.ttl = ttl;
+        cache.directory = Optional.of(directory.toString());
+        cache.init();
+        return cache;
+    }
+}
@@ -0,0 +1,132 @@
+package cn.ac.bestheme.toolsets.mqa.service;
+
+import cn.ac.bestheme.toolsets.mqa.model.Program;
+import cn.ac.bestheme.toolsets.mqa.model.University;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ProgramIndexTest {
+
+    private static final Instant CRAWLED_AT = Instant.parse("2024-05-01T03:00:00Z");
+
+    private final MqaSnapshot snapshot = snapshot();
+    private final ProgramIndex index = ProgramIndex.build(snapshot);
+
+    @Test
+    public void testMultipleValuesMatchAny() {
+        ProgramSearchResult result = index.search(new ProgramQuery(
+            List.of("Selangor", "johor"), List.of("Diploma", "MASTER"), null, null, null,
+            null, null, false, 0, 50));
+        assertEquals(List.of("p2", "p5"), ids(result));
+        assertEquals(2, result.total());
+    }
+
+    @Test
+    public void testDifferentFiltersMatchAll() {
+        ProgramSearchResult result = index.search(new ProgramQuery(
+            List.of("Selangor"), List.of("Bachelor"), List.of("Level 6"), List.of("Computing"), null,
+            null, null, false, 0, 50));
+        assertEquals(List.of("p1"), ids(result));
+    }
+
+    @Test
+    public void testModesNormalized() {
+        // "Full Time, Part Time" 拆分为两个模式，"Full-Time" 与 "full time" 视为相同
+        ProgramSearchResult result = index.search(new ProgramQuery(
+            null, null, null, null, List.of("full time"), null, null, false, 0, 50));
+        assertEquals(List.of("p1", "p2"), ids(result));
+    }
+
+    @Test
+    public void testNameTokensMatchAll() {
+        ProgramSearchResult result = index.search(new ProgramQuery(
+            null, null, null, null, null, "Data  SCIENCE", null, false, 0, 50));
+        assertEquals(List.of("p2", "p4"), ids(result));
+
+        result = index.search(new ProgramQuery(
+            null, null, null, null, null, "data business", null, false, 0, 50));
+        assertEquals(List.of(), ids(result));
+        assertEquals(0, result.total());
+
+        result = index.search(new ProgramQuery(
+            null, null, null, null, null, "business", "kolej data", false, 0, 50));
+        assertEquals(List.of("p5"), ids(result));
+    }
+
+    @Test
+    public void testIncludeRemoved() {
+        ProgramQuery query = new ProgramQuery(
+            List.of("Selangor"), List.of("Bachelor"), null, null, null, null, null, false, 0, 50);
+        assertEquals(List.of("p1"), ids(index.search(query)));
+
+        ProgramSearchResult result = index.search(new ProgramQuery(
+            List.of("Selangor"), List.of("Bachelor"), null, null, null, null, null, true, 0, 50));
+        assertEquals(List.of("p1", "p3"), ids(result));
+        assertEquals(CRAWLED_AT, result.crawledAt());
+    }
+
+    @Test
+    public void testPaging() {
+        ProgramSearchResult result = index.search(new ProgramQuery(
+            null, null, null, null, null, null, null, false, 1, 2));
+        assertEquals(List.of("p2", "p4"), ids(result));
+        assertEquals(4, result.total());
+
+        result = index.search(new ProgramQuery(
+            null, null, null, null, null, null, null, false, 3, 2));
+        assertEquals(List.of("p5"), ids(result));
+
+        // 超出结果范围时返回空页，总数不变
+        result = index.search(new ProgramQuery(
+            null, null, null, null, null, null, null, false, 10, 2));
+        assertEquals(List.of(), ids(result));
+        assertEquals(4, result.total());
+        assertEquals(10, result.offset());
+        assertEquals(2, result.limit());
+
+        result = index.search(new ProgramQuery(
+            null, null, null, null, null, null, null, false, 1, Integer.MAX_VALUE));
+        assertEquals(List.of("p2", "p4", "p5"), ids(result));
+    }
+
+    @Test
+    public void testSnapshotKept() {
+        assertSame(snapshot, index.snapshot());
+    }
+
+    private static List<String> ids(ProgramSearchResult result) {
+        return result.items().stream().map(item -> item.program().getId()).toList();
+    }
+
+    private static MqaSnapshot snapshot() {
+        University teknologi = new University("u1", "Universiti Teknologi Data", "Selangor", null);
+        Program computerScience = program("p1", "Bachelor of Computer Science", "Bachelor", "Level 6", "Computing",
+            "Full Time, Part Time");
+        Program dataDiploma = program("p2", "Diploma in Data Science", "Diploma", "Level 4", "Computing",
+            "Full-Time");
+        Program business = program("p3", "Bachelor of Business Administration", "Bachelor", "Level 6", "Business",
+            null);
+        business.setRemovedAt(CRAWLED_AT.minusSeconds(86400));
+        teknologi.setPrograms(List.of(computerScience, dataDiploma, business));
+
+        University kolej = new University("u2", "Kolej Sains Data", "Johor", null);
+        kolej.setPrograms(List.of(
+            program("p4", "Bachelor of Data Science", "Bachelor", "Level 6", "Computing", null),
+            program("p5", "Master of Business Administration", "Master", "Level 7", "Business", null)));
+
+        return new MqaSnapshot(CRAWLED_AT, List.of(teknologi, kolej));
+    }
+
+    private static Program program(String id, String name, String type, String level, String field, String mode) {
+        Program program = new Program(id, "R-" + id, name, type, level, field);
+        Program.ProgramDetails details = new Program.ProgramDetails();
+        details.setModeOfStudy(mode);
+        program.setDetails(details);
+        return program;
+    }
+}
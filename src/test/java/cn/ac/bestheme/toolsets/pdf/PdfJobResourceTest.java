@@ -0,0 +1,121 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.response.Response;
+import jakarta.ws.rs.core.MediaType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@QuarkusTest
+public class PdfJobResourceTest {
+
+    private static final String TEST_PDF_PATH = "src/test/resources/test.pdf";
+
+    @Test
+    public void testSubmitAndDownload() throws Exception {
+        Response submitted = given()
+            .multiPart("file", new File(TEST_PDF_PATH))
+            .when()
+            .post("/api/pdf/jobs")
+            .then()
+            .statusCode(202)
+            .header("Location", notNullValue())
+            .body("id", notNullValue())
+            .body("file_name", equalTo("test_compressed.pdf"))
+            .extract()
+            .response();
+        String id = submitted.path("id");
+
+        String status = waitForCompletion(id);
+        assertTrue("SUCCEEDED".equals(status), "压缩任务应该成功，实际状态: " + status);
+
+        given()
+            .when()
+            .get("/api/pdf/jobs/" + id)
+            .then()
+            .statusCode(200)
+            .body("result_size", notNullValue())
+            // 包括表单 XObject 中嵌套的图片
+            .body("stats.images", equalTo(21))
+            .body("stats.skipped_by_rule", notNullValue());
+
+        byte[] compressedPdf = given()
+            .when()
+            .get("/api/pdf/jobs/" + id + "/result")
+            .then()
+            .statusCode(200)
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header("Content-Disposition", containsString("test_compressed.pdf"))
+            .extract()
+            .asByteArray();
+        assertTrue(compressedPdf.length > 0, "压缩后的PDF不应为空");
+    }
+
+    @Test
+    public void testFailedJob() throws Exception {
+        String id = given()
+            .multiPart("file", "empty.pdf", new byte[0])
+            .when()
+            .post("/api/pdf/jobs")
+            .then()
+            .statusCode(202)
+            .extract()
+            .path("id");
+
+        String status = waitForCompletion(id);
+        assertTrue("FAILED".equals(status), "空文件的压缩任务应该失败，实际状态: " + status);
+
+        given()
+            .when()
+            .get("/api/pdf/jobs/" + id + "/result")
+            .then()
+            .statusCode(410)
+            .body(containsString("PDF压缩失败"));
+    }
+
+    @Test
+    public void testUnknownJob() {
+        given()
+            .when()
+            .get("/api/pdf/jobs/unknown")
+            .then()
+            .statusCode(404);
+    }
+
+    @Test
+    public void testSubmitNoFile() {
+        given()
+            .contentType("multipart/form-data")
+            .when()
+            .post("/api/pdf/jobs")
+            .then()
+            .statusCode(400)
+            .body(containsString("没有收到文件"));
+    }
+
+    private String waitForCompletion(String id) throws InterruptedException {
+        for (int i = 0; i < 300; i++) {
+            String status = given()
+                .when()
+                .get("/api/pdf/jobs/" + id)
+                .then()
+                .statusCode(200)
+                .extract()
+                .path("status");
+            if ("SUCCEEDED".equals(status) || "FAILED".equals(status)) {
+                return status;
+            }
+            Thread.sleep(100);
+        }
+        fail("压缩任务超时未完成: " + id);
+        return null;
+    }
+}
@@ -3,26 +3,64 @@ package cn.ac.bestheme.toolsets.pdf;
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.RestAssured;
 import io.restassured.response.Response;
+import jakarta.inject.Inject;
 import jakarta.ws.rs.core.MediaType;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationRubberStamp;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 @QuarkusTest
 public class PdfResourceTest {
 
     private static final String TEST_PDF_PATH = "src/test/resources/test.pdf";
 
+    @Inject
+    PdfService pdfService;
+
     @Test
     public void testIndexPage() {
         given()
@@ -121,4 +159,767 @@ public class PdfResourceTest {
             .contentType("text/plain")
             .body(containsString("PDF压缩失败"));
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testCompressPdfWithTargetSize() {
+        File file = new File(TEST_PDF_PATH);
+        long targetSize = 2_000_000;
+
+        byte[] compressedPdf = given()
+            .multiPart("file", file)
+            .multiPart("targetSize", String.valueOf(targetSize))
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .extract()
+            .asByteArray();
+
+        assertTrue(compressedPdf.length > 0, "压缩后的PDF不应为空");
+        assertTrue(compressedPdf.length <= targetSize, "压缩后的PDF应小于目标大小: " + compressedPdf.length);
+    }
+
+    @Test
+    public void testCompressPdfInvalidTargetSize() {
+        given()
+            .multiPart("file", new File(TEST_PDF_PATH))
+            .multiPart("targetSize", "0")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(400)
+            .contentType("text/plain");
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "smooth, 200",
+        "bilinear, 200",
+        "BICUBIC, 200",
+        "lanczos, 400"
+    })
+    public void testCompressPdfWithScaler(String scaler, int expectedStatus) throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(LosslessFactory.createFromImage(document, scan(false)), 50, 400, 250, 350);
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        Response response = given()
+            .multiPart("file", "scaler.pdf", pdf, "application/pdf")
+            .multiPart("scaler", scaler)
+            .when()
+            .post("/api/pdf/compress");
+        response.then().statusCode(expectedStatus);
+        if (expectedStatus != 200) {
+            return;
+        }
+
+        // 1200x1600 的图片按默认配置缩小到长边 1000 像素
+        try (PDDocument document = PDDocument.load(response.asByteArray())) {
+            PDResources resources = document.getPage(0).getResources();
+            PDImageXObject image = (PDImageXObject) resources.getXObject(resources.getXObjectNames().iterator().next());
+            assertEquals(750, image.getWidth());
+            assertEquals(1000, image.getHeight());
+        }
+    }
+
+    @Test
+    public void testCompressPdfBatch() throws IOException {
+        byte[] fileBytes = Files.readAllBytes(new File(TEST_PDF_PATH).toPath());
+
+        Response response = given()
+            .multiPart("files", "test.pdf", fileBytes, "application/pdf")
+            .multiPart("files", "test.pdf", fileBytes, "application/pdf")
+            .multiPart("files", "empty.pdf", new byte[0], "application/pdf")
+            .when()
+            .post("/api/pdf/compress/batch")
+            .then()
+            .statusCode(200)
+            .contentType("application/zip")
+            .header("Content-Disposition", containsString("compressed.zip"))
+            .extract()
+            .response();
+
+        // 条目按完成顺序写入，这里只校验内容
+        Map<String, Integer> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(response.asByteArray()))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                entries.put(entry.getName(), zip.readAllBytes().length);
+            }
+        }
+
+        assertEquals(Set.of("test_compressed.pdf", "test_compressed (2).pdf", "empty_compressed.pdf.error.txt"),
+            entries.keySet());
+        assertTrue(entries.get("test_compressed.pdf") > 0, "压缩后的PDF不应为空");
+        assertTrue(entries.get("test_compressed.pdf") < fileBytes.length, "压缩后的PDF应小于原文件");
+    }
+
+    @Test
+    public void testCompressPdfBatchNoFile() {
+        given()
+            .contentType("multipart/form-data")
+            .when()
+            .post("/api/pdf/compress/batch")
+            .then()
+            .statusCode(400)
+            .contentType("text/plain")
+            .body(containsString("没有收到文件"));
+    }
+
+    @Test
+    public void testCompressionMetrics() throws IOException {
+        // 每次运行内容都不同的文件，不会命中结果缓存，本次请求一定经过 PDFBox
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(LosslessFactory.createFromImage(document, scan(false, System.nanoTime())),
+                    50, 400, 250, 350);
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        String before = metrics();
+        given()
+            .multiPart("file", "metrics.pdf", pdf, "application/pdf")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+        String after = metrics();
+
+        for (String metric : List.of(
+                "pdf_compress_stage_seconds_count{stage=\"load\"",
+                "pdf_compress_stage_seconds_count{stage=\"encode\"",
+                "pdf_compress_stage_seconds_count{stage=\"save\"",
+                "pdf_compress_input_size_bytes_count",
+                "pdf_compress_ratio_count",
+                "pdf_compress_images_total{outcome=\"processed\"",
+                "pdf_cache_requests_total{result=\"miss\"")) {
+            assertEquals(metricValue(before, metric) + 1, metricValue(after, metric), metric);
+        }
+        assertTrue(after.contains("pdf_compress_in_flight"));
+    }
+
+    private static String metrics() {
+        return given()
+            .when()
+            .get("/q/metrics")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asString();
+    }
+
+    /**
+     * Prometheus 文本中以 prefix 开头的所有样本之和（不同标签的样本合计）
+     */
+    private static double metricValue(String metrics, String prefix) {
+        double total = 0;
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith(prefix)) {
+                total += Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        return total;
+    }
+
+    @Test
+    public void testCompressPdfCachedResult() {
+        File file = new File(TEST_PDF_PATH);
+
+        Response first = given()
+            .multiPart("file", file)
+            .multiPart("scaler", "bicubic")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .response();
+        String etag = first.getHeader("ETag");
+        assertTrue(etag != null && !etag.isEmpty(), "响应应该包含ETag");
+        // 读完响应体，结果写完后才进入缓存
+        byte[] firstBody = first.asByteArray();
+
+        // 相同文件、相同参数：结果相同，ETag 相同
+        Response second = given()
+            .multiPart("file", file)
+            .multiPart("scaler", "bicubic")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .header("ETag", etag)
+            .extract()
+            .response();
+        assertTrue(Arrays.equals(firstBody, second.asByteArray()), "缓存的结果应与首次压缩相同");
+
+        // 客户端已有该结果时不重新下载
+        given()
+            .header("If-None-Match", etag)
+            .multiPart("file", file)
+            .multiPart("scaler", "bicubic")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(304);
+
+        // 参数不同时缓存键不同
+        String otherEtag = given()
+            .header("If-None-Match", etag)
+            .multiPart("file", file)
+            .multiPart("scaler", "smooth")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .header("ETag");
+        assertTrue(!etag.equals(otherEtag), "不同参数的ETag应不同");
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "screen, 200",
+        "ebook, 200",
+        "PRINT, 200",
+        "poster, 400"
+    })
+    public void testCompressPdfWithProfile(String profile, int expectedStatus) {
+        given()
+            .multiPart("file", new File(TEST_PDF_PATH))
+            .multiPart("profile", profile)
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(expectedStatus);
+    }
+
+    @Test
+    public void testProfilesOrderedBySize() {
+        int screen = compressedSize("screen");
+        int ebook = compressedSize("ebook");
+        int print = compressedSize("print");
+        assertTrue(screen < ebook, "screen 应小于 ebook: " + screen + " / " + ebook);
+        assertTrue(ebook < print, "ebook 应小于 print: " + ebook + " / " + print);
+    }
+
+    private int compressedSize(String profile) {
+        return given()
+            .multiPart("file", new File(TEST_PDF_PATH))
+            .multiPart("profile", profile)
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray()
+            .length;
+    }
+
+    @Test
+    public void testGrayscaleImagesEncodedAsDeviceGray() throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                // 灰度扫描件保存成的 RGB 图片，以及带一小块红色印章的同一张图片
+                content.drawImage(LosslessFactory.createFromImage(document, scan(false)), 50, 400, 250, 350);
+                content.drawImage(LosslessFactory.createFromImage(document, scan(true)), 300, 400, 250, 350);
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        byte[] compressed = given()
+            .multiPart("file", "scan.pdf", pdf, "application/pdf")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+
+        List<String> colorSpaces = new ArrayList<>();
+        try (PDDocument document = PDDocument.load(compressed)) {
+            PDResources resources = document.getPage(0).getResources();
+            for (COSName name : resources.getXObjectNames()) {
+                PDImageXObject image = (PDImageXObject) resources.getXObject(name);
+                colorSpaces.add(image.getColorSpace().getName());
+            }
+        }
+        colorSpaces.sort(null);
+        assertEquals(List.of("DeviceGray", "DeviceRGB"), colorSpaces);
+    }
+
+    @Test
+    public void testCompressPdfLinearized() throws IOException {
+        byte[] linearized = given()
+            .multiPart("file", new File(TEST_PDF_PATH))
+            .multiPart("linearize", "true")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+
+        // 线性化参数字典是文件中的第一个对象，/L 等于文件长度
+        String head = new String(linearized, 0, 1024, StandardCharsets.ISO_8859_1);
+        assertTrue(head.contains("/Linearized 1"), "文件开头应有线性化参数字典");
+        Matcher length = Pattern.compile("/L (\\d+)").matcher(head);
+        assertTrue(length.find());
+        assertEquals(linearized.length, Long.parseLong(length.group(1)));
+
+        // 文件末尾的 startxref 指向第一页的交叉引用表
+        String tail = new String(linearized, linearized.length - 64, 64, StandardCharsets.ISO_8859_1);
+        Matcher startxref = Pattern.compile("startxref\\s+(\\d+)").matcher(tail);
+        assertTrue(startxref.find());
+        int firstXref = Integer.parseInt(startxref.group(1));
+        assertEquals("xref", new String(linearized, firstXref, 4, StandardCharsets.ISO_8859_1));
+
+        try (PDDocument original = PDDocument.load(new File(TEST_PDF_PATH));
+             PDDocument document = PDDocument.load(linearized)) {
+            assertEquals(original.getNumberOfPages(), document.getNumberOfPages());
+        }
+    }
+
+    @Test
+    public void testUnusedResourcesAndThumbnailsRemoved() throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(LosslessFactory.createFromImage(document, scan(false)), 50, 400, 250, 350);
+            }
+            // 资源中有一张内容流没有用到的图片，页面带有缩略图
+            page.getResources().add(LosslessFactory.createFromImage(document, scan(true)));
+            page.getCOSObject().setItem(COSName.THUMB,
+                LosslessFactory.createFromImage(document, new BufferedImage(60, 80, BufferedImage.TYPE_INT_RGB)));
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        byte[] compressed = given()
+            .multiPart("file", "unused.pdf", pdf, "application/pdf")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+
+        try (PDDocument document = PDDocument.load(compressed)) {
+            PDPage page = document.getPage(0);
+            List<COSName> names = new ArrayList<>();
+            page.getResources().getXObjectNames().forEach(names::add);
+            assertEquals(1, names.size());
+            assertTrue(page.getCOSObject().getDictionaryObject(COSName.THUMB) == null);
+        }
+    }
+
+    @Test
+    public void testResourcesSharedWithFormKept() throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            // 表单的资源字典就是页面的资源字典（同一个间接对象），图片只在表单中使用
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            PDResources resources = new PDResources();
+            COSObject shared = new COSObject(resources.getCOSObject());
+            page.getCOSObject().setItem(COSName.RESOURCES, shared);
+            PDFormXObject form = new PDFormXObject(document);
+            form.setBBox(PDRectangle.A4);
+            form.getCOSObject().setItem(COSName.RESOURCES, shared);
+            try (PDPageContentStream content = new PDPageContentStream(document, form, form.getStream().createOutputStream())) {
+                content.drawImage(LosslessFactory.createFromImage(document, scan(false)), 50, 400, 250, 350);
+            }
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawForm(form);
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        byte[] compressed = given()
+            .multiPart("file", "shared.pdf", pdf, "application/pdf")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+
+        try (PDDocument document = PDDocument.load(compressed)) {
+            PDResources resources = document.getPage(0).getResources();
+            List<COSName> names = new ArrayList<>();
+            resources.getXObjectNames().forEach(names::add);
+            assertEquals(2, names.size());
+            PDFormXObject form = null;
+            for (COSName name : names) {
+                if (resources.getXObject(name) instanceof PDFormXObject xObject) {
+                    form = xObject;
+                }
+            }
+            assertTrue(form != null);
+            assertEquals(List.of(COSName.DCT_DECODE), imageFilters(form.getResources()));
+        }
+    }
+
+    @Test
+    public void testImageWithoutColorSpaceKept() throws IOException {
+        byte[] pdf;
+        long originalLength;
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            // 与缺少 /ColorSpace 的 JPX 一样，PDFBox 无法确定颜色空间
+            PDImageXObject image = JPEGFactory.createFromImage(document, scan(false), 1.0f);
+            image.getCOSObject().removeItem(COSName.COLORSPACE);
+            originalLength = image.getCOSObject().getLength();
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(image, 50, 400, 250, 350);
+                content.drawImage(LosslessFactory.createFromImage(document, scan(true)), 50, 50, 250, 300);
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        byte[] compressed = given()
+            .multiPart("file", "no-colorspace.pdf", pdf, "application/pdf")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+
+        try (PDDocument document = PDDocument.load(compressed)) {
+            PDResources resources = document.getPage(0).getResources();
+            List<Long> unknown = new ArrayList<>();
+            for (COSName name : resources.getXObjectNames()) {
+                COSStream stream = (COSStream) resources.getXObject(name).getCOSObject();
+                if (stream.getDictionaryObject(COSName.COLORSPACE) == null) {
+                    unknown.add(stream.getLength());
+                }
+            }
+            // 颜色空间未知的图片原样保留，其他图片照常压缩
+            assertEquals(List.of(originalLength), unknown);
+            assertEquals(List.of(COSName.DCT_DECODE, COSName.DCT_DECODE), imageFilters(resources));
+        }
+    }
+
+    @Test
+    public void testImagesInFormsAndAnnotationsCompressed() throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            // 两个页面共用的表单，图片在表单自己的资源中
+            PDFormXObject form = new PDFormXObject(document);
+            form.setBBox(PDRectangle.A4);
+            form.setResources(new PDResources());
+            try (PDPageContentStream content = new PDPageContentStream(document, form, form.getStream().createOutputStream())) {
+                content.drawImage(LosslessFactory.createFromImage(document, scan(true)), 50, 400, 250, 350);
+            }
+            // 注释外观流中的图片
+            PDAppearanceStream appearance = new PDAppearanceStream(document);
+            appearance.setBBox(new PDRectangle(200, 200));
+            appearance.setResources(new PDResources());
+            try (PDPageContentStream content = new PDPageContentStream(document, appearance)) {
+                content.drawImage(LosslessFactory.createFromImage(document, scan(true)), 0, 0, 200, 200);
+            }
+            PDAnnotationRubberStamp stamp = new PDAnnotationRubberStamp();
+            stamp.setRectangle(new PDRectangle(300, 100, 200, 200));
+            PDAppearanceDictionary appearances = new PDAppearanceDictionary();
+            appearances.setNormalAppearance(appearance);
+            stamp.setAppearance(appearances);
+
+            for (int i = 0; i < 2; i++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.drawForm(form);
+                }
+            }
+            document.getPage(0).getAnnotations().add(stamp);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        byte[] compressed = given()
+            .multiPart("file", "nested.pdf", pdf, "application/pdf")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+
+        assertTrue(compressed.length < pdf.length / 2);
+        try (PDDocument document = PDDocument.load(compressed)) {
+            PDFormXObject form = (PDFormXObject) document.getPage(0).getResources()
+                .getXObject(document.getPage(0).getResources().getXObjectNames().iterator().next());
+            assertEquals(List.of(COSName.DCT_DECODE), imageFilters(form.getResources()));
+            PDAppearanceStream appearance = document.getPage(0).getAnnotations().get(0).getNormalAppearanceStream();
+            assertEquals(List.of(COSName.DCT_DECODE), imageFilters(appearance.getResources()));
+        }
+    }
+
+    @Test
+    public void testLargeScanDecodedAtOutputSize() throws IOException {
+        // 4000x3000 的扫描件，右下角有一块红色印章；按默认配置缩小到 1000 像素，4 倍抽样后分条带解码
+        BufferedImage scan = new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(11);
+        for (int y = 0; y < scan.getHeight(); y++) {
+            for (int x = 0; x < scan.getWidth(); x++) {
+                int value = 200 + random.nextInt(50);
+                scan.setRGB(x, y, (value << 16) | (value << 8) | value);
+            }
+        }
+        for (int y = 2600; y < 2800; y++) {
+            for (int x = 3600; x < 3800; x++) {
+                scan.setRGB(x, y, 0xd02020);
+            }
+        }
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(LosslessFactory.createFromImage(document, scan), 50, 300, 500, 375);
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        byte[] compressed = given()
+            .multiPart("file", "large.pdf", pdf, "application/pdf")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(200)
+            .extract()
+            .asByteArray();
+
+        try (PDDocument document = PDDocument.load(compressed)) {
+            PDResources resources = document.getPage(0).getResources();
+            PDImageXObject image = (PDImageXObject) resources.getXObject(resources.getXObjectNames().iterator().next());
+            assertEquals(1000, image.getWidth());
+            assertEquals(750, image.getHeight());
+            // 印章在各条带拼接后的位置不变
+            BufferedImage decoded = image.getImage();
+            int stamp = decoded.getRGB(925, 675);
+            assertTrue((stamp >> 16 & 0xff) > 150 && (stamp >> 8 & 0xff) < 80, "印章应为红色");
+            int background = decoded.getRGB(925, 600);
+            assertTrue((background >> 8 & 0xff) > 150, "印章外应为浅灰色");
+        }
+    }
+
+    @Test
+    public void testBrokenImageFailsAfterOtherImagesFinish() throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            // 声明为 4000x3000 的 JPEG，数据却无法解码；需要缩小，因此一定会被解码。排在最前面，最先失败
+            byte[] garbage = new byte[64 * 1024];
+            new Random(3).nextBytes(garbage);
+            PDImageXObject broken = new PDImageXObject(document, new ByteArrayInputStream(garbage),
+                COSName.DCT_DECODE, 4000, 3000, 8, PDDeviceRGB.INSTANCE);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(broken, 0, 0, 100, 75);
+                for (int i = 0; i < 3; i++) {
+                    content.drawImage(LosslessFactory.createFromImage(document, scan(false, 20 + i)),
+                        50 + i * 150, 400, 150, 200);
+                }
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        given()
+            .multiPart("file", "broken.pdf", pdf, "application/pdf")
+            .when()
+            .post("/api/pdf/compress")
+            .then()
+            .statusCode(500)
+            .body(containsString("PDF压缩失败"));
+
+        // 返回错误时其余图片的任务已经结束，解码内存全部归还
+        assertEquals(0, pdfService.decodeBudget().reserved());
+    }
+
+    @Test
+    public void testCompressPdfOverloaded() throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(LosslessFactory.createFromImage(document, scan(false)), 50, 400, 250, 350);
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        // 占满测试配置中的解码预算，文档等待 admission-timeout 后被拒绝
+        DecodeBudget budget = pdfService.decodeBudget();
+        DecodeBudget.Reservation reservation = budget.reserve(budget.total(), Duration.ZERO);
+        try {
+            given()
+                .multiPart("file", "busy.pdf", pdf, "application/pdf")
+                .when()
+                .post("/api/pdf/compress")
+                .then()
+                .statusCode(429)
+                .header("Retry-After", notNullValue())
+                .body(containsString("服务器繁忙"));
+        } finally {
+            reservation.close();
+        }
+        assertEquals(0, budget.reserved());
+    }
+
+    @Test
+    public void testDecodeReservationReleasedAfterLeases() throws IOException {
+        DecodeBudget budget = pdfService.decodeBudget();
+        DecodeBudget.Reservation reservation = budget.reserve(1024, Duration.ZERO);
+        DecodeBudget.Reservation.Lease lease = reservation.acquire(512);
+        // 仍有图片持有额度时关闭预留，额度等图片归还后才还给总预算
+        reservation.close();
+        assertEquals(1024, budget.reserved());
+        lease.close();
+        assertEquals(0, budget.reserved());
+    }
+
+    @Test
+    public void testUniformImagesDecodedInParallel() throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            // 每页一张尺寸相同的扫描图片
+            for (int i = 0; i < 8; i++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.drawImage(LosslessFactory.createFromImage(document, scan(false, i)), 50, 400, 250, 350);
+                }
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        CompressionStats stats;
+        try (CompressedPdf result = pdfService.compress(new ByteArrayInputStream(pdf))) {
+            stats = result.getStats();
+        }
+        assertEquals(8, stats.getDownscaled());
+        // 预留额度足够多张图片同时解码，而不是只够最大的一张
+        assertTrue(stats.getPeakDecodes() > 1, "同时解码的图片数: " + stats.getPeakDecodes());
+        assertEquals(0, pdfService.decodeBudget().reserved());
+    }
+
+    @Test
+    public void testImageSharedAcrossPagesKept() throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            // 同一张图片（同一个数据流）画在每一页上，例如每页都有的页眉图标
+            PDImageXObject image = LosslessFactory.createFromImage(document, scan(false));
+            for (int i = 0; i < 3; i++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.drawImage(image, 50, 400, 250, 350);
+                }
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            document.save(outputStream);
+            pdf = outputStream.toByteArray();
+        }
+
+        byte[] compressed;
+        CompressionStats stats;
+        try (CompressedPdf result = pdfService.compress(new ByteArrayInputStream(pdf))) {
+            stats = result.getStats();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            result.writeTo(outputStream);
+            compressed = outputStream.toByteArray();
+        }
+        assertEquals(1, stats.getImages());
+        assertEquals(3, stats.getReferences());
+        assertTrue(stats.getReferences() > stats.getImages());
+
+        // 压缩后各页仍引用同一个图片数据流，而不是各自一份副本
+        try (PDDocument document = PDDocument.load(compressed)) {
+            assertEquals(3, document.getNumberOfPages());
+            List<COSStream> streams = new ArrayList<>();
+            for (PDPage page : document.getPages()) {
+                PDResources resources = page.getResources();
+                for (COSName name : resources.getXObjectNames()) {
+                    if (resources.getXObject(name) instanceof PDImageXObject image) {
+                        streams.add(image.getCOSObject());
+                    }
+                }
+            }
+            assertEquals(3, streams.size());
+            assertSame(streams.get(0), streams.get(1));
+            assertSame(streams.get(0), streams.get(2));
+        }
+    }
+
+    private static List<COSName> imageFilters(PDResources resources) throws IOException {
+        List<COSName> filters = new ArrayList<>();
+        for (COSName name : resources.getXObjectNames()) {
+            if (resources.getXObject(name) instanceof PDImageXObject image) {
+                filters.addAll(image.getStream().getFilters());
+            }
+        }
+        return filters;
+    }
+
+    private static BufferedImage scan(boolean stamp) {
+        return scan(stamp, 7);
+    }
+
+    private static BufferedImage scan(boolean stamp, long seed) {
+        BufferedImage image = new BufferedImage(1200, 1600, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int value = (y / 40 % 2 == 0 && x % 300 < 250) ? 40 + random.nextInt(30) : 225 + random.nextInt(30);
+                image.setRGB(x, y, (value << 16) | (value << 8) | value);
+            }
+        }
+        if (stamp) {
+            for (int y = 1400; y < 1440; y++) {
+                for (int x = 1000; x < 1040; x++) {
+                    image.setRGB(x, y, 0xd02020);
+                }
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,40 @@
+package cn.ac.bestheme.toolsets.pdf;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SubsampledDecoderTest {
+
+    @Test
+    public void testStripsFollowStripPixels() {
+        // 4000x3000 按 4 倍抽样为 1000x750，每个条带抽样后 262 行，共 3 个条带
+        int rows = SubsampledDecoder.stripRows(3000, 1000, 750, 4, 262_144);
+        assertEquals(262 * 4, rows);
+        assertEquals(3, strips(3000, rows));
+    }
+
+    @Test
+    public void testStripCountBounded() {
+        // 条带像素数设得很小时，条带数仍不超过上限，每个条带的行数仍是抽样倍数的整数倍
+        int rows = SubsampledDecoder.stripRows(30000, 10000, 7500, 4, 10_000);
+        assertEquals(0, rows % 4);
+        assertTrue(strips(30000, rows) <= SubsampledDecoder.MAX_STRIPS, "条带数: " + strips(30000, rows));
+        assertEquals(SubsampledDecoder.MAX_STRIPS, strips(30000, rows));
+
+        // 高度不能整除时最后一个条带较短
+        rows = SubsampledDecoder.stripRows(2999, 1000, 1000, 3, 1);
+        assertEquals(0, rows % 3);
+        assertTrue(strips(2999, rows) <= SubsampledDecoder.MAX_STRIPS);
+    }
+
+    @Test
+    public void testStripNotTallerThanImage() {
+        assertEquals(3000, SubsampledDecoder.stripRows(3000, 1000, 750, 4, Long.MAX_VALUE));
+    }
+
+    private static int strips(int height, int rows) {
+        return (height + rows - 1) / rows;
+    }
+}